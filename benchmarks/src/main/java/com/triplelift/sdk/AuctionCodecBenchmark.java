@@ -0,0 +1,49 @@
+package com.triplelift.sdk;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decode cost per ad of each auction codec, from the bytes off the wire to an AuctionAnswer.
+ * The bytes each codec puts on the wire are checked by AuctionResponseCodecTest.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuctionCodecBenchmark {
+
+    private byte[] json;
+    private byte[] binary;
+
+    @Setup
+    public void setUp() throws IOException, JSONException {
+        AuctionAnswer answer = AuctionAnswer.fill(AuctionResponseParser.parse(AuctionParseBenchmark.AUCTION_RESPONSE));
+        json = AuctionResponseCodecs.JSON.encode(answer);
+        binary = AuctionResponseCodecs.BINARY.encode(answer);
+    }
+
+    @Benchmark
+    public AuctionAnswer decodeJson() throws IOException {
+        return AuctionResponseCodecs.JSON.decode(json, "UTF-8");
+    }
+
+    @Benchmark
+    public AuctionAnswer decodeBinary() throws IOException {
+        return AuctionResponseCodecs.BINARY.decode(binary, "UTF-8");
+    }
+}
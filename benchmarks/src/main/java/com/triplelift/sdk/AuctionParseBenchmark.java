@@ -0,0 +1,55 @@
+package com.triplelift.sdk;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuctionParseBenchmark {
+
+    static final String AUCTION_RESPONSE = "{\"advertiser_name\":\"Example Brand\","
+            + "\"clickthrough_url\":\"http://tlx.3lift.com/mj/click?id=3f9a8c1e&redir=http%3A%2F%2Fexample.com%2Flanding\","
+            + "\"image_url\":\"https://img.3lift.com/?width=1080&height=667&url=http%3A%2F%2Fcdn.example.com%2Fcreative.jpg\","
+            + "\"caption\":\"A caption long enough to look like real ad copy, about two lines on a phone.\","
+            + "\"heading\":\"An example heading\","
+            + "\"impression_pixels\":[\"http://eb2.3lift.com/mbi?id=3f9a8c1e&inv_code=example_inv_code&ts=1455052000\","
+            + "\"http://ad.doubleclick.net/ddm/ad/N1234.5678/B9012345.6;sz=1x1;ord=1455052000\"],"
+            + "\"clickthrough_pixels\":[\"http://eb2.3lift.com/mbc?id=3f9a8c1e&inv_code=example_inv_code&ts=1455052000\"]}";
+
+    private String body;
+    private JSONObject response;
+
+    @Setup
+    public void setUp() throws JSONException {
+        body = AUCTION_RESPONSE;
+        response = new JSONObject(AUCTION_RESPONSE);
+    }
+
+    @Benchmark
+    public AuctionResponse parseBody() throws JSONException {
+        // what the network dispatcher and the listener do together
+        return AuctionResponseParser.parse(body);
+    }
+
+    @Benchmark
+    public AuctionResponse parseJsonObject() throws JSONException {
+        // only the part that runs on the main thread
+        return AuctionResponseParser.parse(response);
+    }
+}
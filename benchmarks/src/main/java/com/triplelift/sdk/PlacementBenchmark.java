@@ -0,0 +1,81 @@
+package com.triplelift.sdk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlacementBenchmark {
+
+    private static final int INTERVAL = 7;
+    private static final int LOOKUPS = 1024;
+
+    @Param({"50", "1000", "20000"})
+    public int slots;
+
+    private NativeFeedPlacement<Object> placement;
+    private int[] positions;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        placement = new NativeFeedPlacement<>(new NativeFeedPositions(new int[] {3}, INTERVAL), slots);
+        // fill half the slots, as if the user scrolled through half the feed
+        Object ad = new Object();
+        for (int slot = 0; slot < slots / 2; slot++) {
+            placement.placeNativeAd(ad, placement.slotPosition(slot));
+        }
+        int feedLength = slots * INTERVAL;
+        Random random = new Random(42);
+        positions = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            positions[i] = random.nextInt(feedLength);
+        }
+    }
+
+    private int nextPosition() {
+        cursor = (cursor + 1) & (LOOKUPS - 1);
+        return positions[cursor];
+    }
+
+    @Benchmark
+    public boolean isAdPosition() {
+        return placement.isAdPosition(nextPosition());
+    }
+
+    @Benchmark
+    public Object getNativeAd() {
+        return placement.getNativeAd(nextPosition());
+    }
+
+    @Benchmark
+    public int getContentPosition() {
+        return placement.getContentPosition(nextPosition());
+    }
+
+    @Benchmark
+    public int scrollFeed() {
+        // what the adapter asks for every row while scrolling
+        int position = nextPosition();
+        if (placement.isAdPositionLive(position)) {
+            return -1;
+        }
+        return placement.getContentPosition(position);
+    }
+}
@@ -0,0 +1,44 @@
+package com.triplelift.sdk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlBuilderBenchmark {
+
+    private Map<String, String> userData;
+
+    @Setup
+    public void setUp() {
+        // same map type and keys the adapter sends
+        userData = new ConcurrentHashMap<>();
+        userData.put("width", "1080");
+        userData.put("height", "667");
+        userData.put("ip", "192.168.1.20");
+        userData.put("gender", "f");
+        userData.put("yob", "1985");
+        userData.put("keywords", "travel,food,design");
+    }
+
+    @Benchmark
+    public String build() {
+        return AuctionUrlBuilder.build(AuctionUrlBuilder.BASE_URL, "example_inv_code", userData, false);
+    }
+}
@@ -0,0 +1,69 @@
+package com.triplelift.sdk;
+
+/**
+ * Measured slot sizes rounded to a small fixed set, so auctions ask for a handful of sizes
+ * and pooled ads can be reused by every slot of the same bucket. Instances are shared.
+ */
+public final class AdSizeBucket {
+
+    static final int[] WIDTHS = new int[]{320, 480, 640, 720, 1080, 1440};
+    // width / height
+    static final double[] ASPECT_RATIOS = new double[]{0.75, 1.0, 1.333, 1.618, 1.91};
+    // golden ratio, used when the height is not known yet
+    private static final int DEFAULT_ASPECT_RATIO = 3;
+
+    private static final AdSizeBucket[] BUCKETS = new AdSizeBucket[WIDTHS.length * ASPECT_RATIOS.length];
+
+    static {
+        for (int w = 0; w < WIDTHS.length; w++) {
+            for (int r = 0; r < ASPECT_RATIOS.length; r++) {
+                int height = (int) Math.round(WIDTHS[w] / ASPECT_RATIOS[r]);
+                BUCKETS[w * ASPECT_RATIOS.length + r] = new AdSizeBucket(WIDTHS[w], height);
+            }
+        }
+    }
+
+    private final int width;
+    private final int height;
+
+    private AdSizeBucket(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /** Smallest bucket at least as wide as the slot, with the closest aspect ratio */
+    public static AdSizeBucket forSize(int width, int height) {
+        int w = 0;
+        while (w < WIDTHS.length - 1 && WIDTHS[w] < width) {
+            w++;
+        }
+
+        int r = DEFAULT_ASPECT_RATIO;
+        if (width > 0 && height > 0) {
+            double aspectRatio = (double) width / height;
+            double closest = Double.MAX_VALUE;
+            for (int i = 0; i < ASPECT_RATIOS.length; i++) {
+                double distance = Math.abs(ASPECT_RATIOS[i] - aspectRatio);
+                if (distance < closest) {
+                    closest = distance;
+                    r = i;
+                }
+            }
+        }
+
+        return BUCKETS[w * ASPECT_RATIOS.length + r];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height;
+    }
+}
@@ -0,0 +1,35 @@
+package com.triplelift.sdk;
+
+/** What an exchange answered an auction with, either an ad or a no-fill status */
+public final class AuctionAnswer {
+
+    private final AuctionResponse response;
+    private final String status;
+
+    private AuctionAnswer(AuctionResponse response, String status) {
+        this.response = response;
+        this.status = status;
+    }
+
+    public static AuctionAnswer fill(AuctionResponse response) {
+        return new AuctionAnswer(response, null);
+    }
+
+    public static AuctionAnswer noFill(String status) {
+        return new AuctionAnswer(null, status);
+    }
+
+    public boolean isFill() {
+        return response != null;
+    }
+
+    /** Null on a no-fill */
+    public AuctionResponse getResponse() {
+        return response;
+    }
+
+    /** Why the exchange did not fill, null on a fill */
+    public String getStatus() {
+        return status;
+    }
+}
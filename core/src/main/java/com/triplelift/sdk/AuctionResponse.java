@@ -0,0 +1,83 @@
+package com.triplelift.sdk;
+
+import java.util.List;
+
+/** A filled auction, as returned by the exchange */
+public class AuctionResponse {
+
+    /** Longer TTLs are cut to this, a day is far beyond any exchange's real one */
+    public static final long MAX_TTL_SECONDS = 24 * 60 * 60;
+
+    private final String advertiserName, clickthroughUrl, imageUrl, caption, heading;
+    private final List<String> impressionPixels, clickthroughPixels;
+    private final long ttlSeconds;
+    private final double price;
+    private final String logoUrl;
+    private final String format;
+
+    /** Built by the codecs, a ttl or price of 0 and a null logo or format mean the exchange did not say */
+    AuctionResponse(String advertiserName, String clickthroughUrl, String imageUrl, String caption, String heading,
+                    List<String> impressionPixels, List<String> clickthroughPixels, long ttlSeconds, double price,
+                    String logoUrl, String format) {
+        this.advertiserName = advertiserName;
+        this.clickthroughUrl = clickthroughUrl;
+        this.imageUrl = imageUrl;
+        this.caption = caption;
+        this.heading = heading;
+        this.impressionPixels = impressionPixels;
+        this.clickthroughPixels = clickthroughPixels;
+        // a wild TTL would overflow once turned into an expiry time
+        this.ttlSeconds = Math.min(Math.max(ttlSeconds, 0), MAX_TTL_SECONDS);
+        this.price = price;
+        this.logoUrl = logoUrl;
+        this.format = format;
+    }
+
+    public String getAdvertiserName() {
+        return advertiserName;
+    }
+
+    public String getClickthroughUrl() {
+        return clickthroughUrl;
+    }
+
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    public String getCaption() {
+        return caption;
+    }
+
+    public String getHeading() {
+        return heading;
+    }
+
+    public List<String> getImpressionPixels() {
+        return impressionPixels;
+    }
+
+    public List<String> getClickthroughPixels() {
+        return clickthroughPixels;
+    }
+
+    /** How long the exchange will honour this ad, 0 when it did not say, at most MAX_TTL_SECONDS */
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    /** Clearing price, used to pick between exchanges answering the same auction, 0 when absent */
+    public double getPrice() {
+        return price;
+    }
+
+    /** Advertiser logo, null when the exchange did not send one */
+    public String getLogoUrl() {
+        return logoUrl;
+    }
+
+    /** Creative format, picks the layout the ad is shown in, null when the exchange did not say */
+    public String getFormat() {
+        return format;
+    }
+}
@@ -0,0 +1,17 @@
+package com.triplelift.sdk;
+
+import java.io.IOException;
+
+/**
+ * Wire format of auction answers. The SDK lists the codecs it has in the Accept header of every
+ * auction and decodes each answer with the codec matching its Content-Type.
+ */
+public interface AuctionResponseCodec {
+
+    String getContentType();
+
+    /** charset is the one the response declared, for text formats */
+    AuctionAnswer decode(byte[] body, String charset) throws IOException;
+
+    byte[] encode(AuctionAnswer answer) throws IOException;
+}
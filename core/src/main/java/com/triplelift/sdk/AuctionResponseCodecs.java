@@ -0,0 +1,42 @@
+package com.triplelift.sdk;
+
+import java.util.List;
+
+/** Content negotiation between the codecs the SDK offers and the answer an exchange sends */
+public final class AuctionResponseCodecs {
+
+    public static final AuctionResponseCodec JSON = new JsonAuctionResponseCodec();
+    public static final AuctionResponseCodec BINARY = new BinaryAuctionResponseCodec();
+
+    private AuctionResponseCodecs() {
+    }
+
+    /** Accept header value listing the codecs, most preferred first */
+    public static String accept(List<AuctionResponseCodec> codecs) {
+        StringBuilder accept = new StringBuilder();
+        for (int i = 0; i < codecs.size(); i++) {
+            if (i > 0) {
+                accept.append(", ");
+            }
+            accept.append(codecs.get(i).getContentType());
+            if (i > 0) {
+                accept.append(";q=0.").append(Math.max(9 - i, 1));
+            }
+        }
+        return accept.toString();
+    }
+
+    /** The codec of the answer's Content-Type, JSON for exchanges that ignore the Accept header */
+    public static AuctionResponseCodec forContentType(List<AuctionResponseCodec> codecs, String contentType) {
+        if (contentType != null) {
+            int params = contentType.indexOf(';');
+            String mediaType = (params < 0 ? contentType : contentType.substring(0, params)).trim();
+            for (AuctionResponseCodec codec: codecs) {
+                if (codec.getContentType().equalsIgnoreCase(mediaType)) {
+                    return codec;
+                }
+            }
+        }
+        return JSON;
+    }
+}
@@ -0,0 +1,57 @@
+package com.triplelift.sdk;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class AuctionResponseParser {
+
+    private AuctionResponseParser() {
+    }
+
+    public static AuctionResponse parse(String response) throws JSONException {
+        return parse(new JSONObject(response));
+    }
+
+    /** Returns null when the exchange answered with a status instead of an ad */
+    public static AuctionResponse parse(JSONObject response) throws JSONException {
+        if (response.has("status")) {
+            return null;
+        }
+
+        String advertiser = response.getString("advertiser_name");
+        String clickthroughUrl = response.getString("clickthrough_url");
+        String imageUrl = response.getString("image_url");
+        String caption = response.getString("caption");
+        String heading = response.getString("heading");
+
+        imageUrl = ImageUrls.forceHttp(imageUrl);
+
+        //TODO maybe null check
+        List<String> clickthroughPixels = jsonArrayToList(response.optJSONArray("clickthrough_pixels"));
+        List<String> impressionPixels = jsonArrayToList(response.optJSONArray("impression_pixels"));
+
+        long ttlSeconds = response.optLong("ttl", 0);
+        double price = response.optDouble("price", 0);
+        String logoUrl = response.optString("logo_url", null);
+        String format = response.optString("format", null);
+
+        return new AuctionResponse(advertiser, clickthroughUrl, imageUrl, caption, heading,
+                impressionPixels, clickthroughPixels, ttlSeconds, price, logoUrl, format);
+    }
+
+    private static List<String> jsonArrayToList(JSONArray jsonArray) throws JSONException {
+        if (jsonArray == null) {
+            return new ArrayList<>(0);
+        }
+        int len = jsonArray.length();
+        ArrayList<String> list = new ArrayList<>(len);
+        for (int i = 0; i < len; i++) {
+            list.add(jsonArray.get(i).toString());
+        }
+        return list;
+    }
+}
@@ -0,0 +1,28 @@
+package com.triplelift.sdk;
+
+import java.util.Map;
+
+public class AuctionUrlBuilder {
+
+    public static final String BASE_URL = "http://tlx.3lift.com/mj/auction?invType=app&";
+    //    public static final String BASE_URL = "http://10.0.1.86:8076/mj/auction?invType=app&";
+
+    private AuctionUrlBuilder() {
+    }
+
+    public static String build(String baseUrl, String invCode, Map<String, String> userData, boolean test) {
+        StringBuilder sb = new StringBuilder(baseUrl.length() + invCode.length() + 24 + userData.size() * 24);
+        sb.append(baseUrl);
+        if (test) {
+            sb.append("test=true&");
+        }
+        sb.append("inv_code=").append(invCode).append('&');
+        for (Map.Entry<String, String> entry: userData.entrySet()) {
+            sb.append(entry.getKey());
+            sb.append('=');
+            sb.append(entry.getValue());
+            sb.append('&');
+        }
+        return sb.toString();
+    }
+}
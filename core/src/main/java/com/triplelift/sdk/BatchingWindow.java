@@ -0,0 +1,92 @@
+package com.triplelift.sdk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Holds back deferrable traffic until the radio is up anyway. A cellular radio stays in its high
+ * power state for a tail after every transmission, so deferred items go out with the next urgent
+ * request, within that tail, or once the oldest of them has waited maxDeferMillis, whichever
+ * comes first. Not thread safe, drive it from one thread.
+ */
+public class BatchingWindow<T> {
+
+    private final Clock clock;
+    private final long maxDeferMillis;
+    private final long radioTailMillis;
+    private final List<T> pending;
+    private long flushAt = Long.MAX_VALUE;
+    private long radioActiveUntil = Long.MIN_VALUE;
+    private int wakeups = 0;
+
+    public BatchingWindow(Clock clock, long maxDeferMillis, long radioTailMillis) {
+        this.clock = clock;
+        this.maxDeferMillis = maxDeferMillis;
+        this.radioTailMillis = radioTailMillis;
+        this.pending = new ArrayList<>();
+    }
+
+    /** Urgent traffic is going out now, returns the deferred items to send along with it */
+    public List<T> onUrgent() {
+        transmit();
+        return drain();
+    }
+
+    /** Returns what to send now, the item with anything pending when the radio is up, else nothing */
+    public List<T> defer(T item) {
+        pending.add(item);
+        if (isRadioActive()) {
+            transmit();
+            return drain();
+        }
+        if (pending.size() == 1) {
+            flushAt = clock.now() + maxDeferMillis;
+        }
+        return Collections.emptyList();
+    }
+
+    /** Returns the pending items once they are due, call it at getFlushAt() */
+    public List<T> poll() {
+        if (pending.isEmpty() || (!isRadioActive() && clock.now() < flushAt)) {
+            return Collections.emptyList();
+        }
+        transmit();
+        return drain();
+    }
+
+    /** When the pending items are due at the latest, Long.MAX_VALUE when there are none */
+    public long getFlushAt() {
+        return pending.isEmpty() ? Long.MAX_VALUE : flushAt;
+    }
+
+    public boolean isRadioActive() {
+        return clock.now() < radioActiveUntil;
+    }
+
+    /** Transmissions that found the radio idle, each one costs a full ramp up and tail */
+    public int getWakeups() {
+        return wakeups;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    private void transmit() {
+        if (!isRadioActive()) {
+            wakeups++;
+        }
+        radioActiveUntil = clock.now() + radioTailMillis;
+    }
+
+    private List<T> drain() {
+        if (pending.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<T> due = new ArrayList<>(pending);
+        pending.clear();
+        flushAt = Long.MAX_VALUE;
+        return due;
+    }
+}
@@ -0,0 +1,232 @@
+package com.triplelift.sdk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact auction answers. After a two byte magic and a version byte, fields follow in a fixed
+ * order, strings as a varint of their UTF-8 length plus one (0 for null) and the bytes. Tracking
+ * URLs are split at the '?' like InternedUrls does, each ad carries the table of its distinct
+ * prefixes once and every pixel refers to its prefix by index.
+ */
+public class BinaryAuctionResponseCodec implements AuctionResponseCodec {
+
+    public static final String CONTENT_TYPE = "application/vnd.triplelift.auction";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAGIC_0 = 'T', MAGIC_1 = 'L';
+    private static final int VERSION = 1;
+    private static final int NO_FILL = 0, FILL = 1;
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public AuctionAnswer decode(byte[] body, String charset) throws IOException {
+        Reader in = new Reader(body);
+        if (in.readByte() != MAGIC_0 || in.readByte() != MAGIC_1) {
+            throw new IOException("not a binary auction answer");
+        }
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("unknown binary auction answer version " + version);
+        }
+        if (in.readByte() == NO_FILL) {
+            return AuctionAnswer.noFill(in.readString());
+        }
+
+        String advertiser = in.readString();
+        String clickthroughUrl = in.readString();
+        String imageUrl = in.readString();
+        String caption = in.readString();
+        String heading = in.readString();
+        String logoUrl = in.readString();
+        String format = in.readString();
+        long ttlSeconds = in.readVarint();
+        double price = Double.longBitsToDouble(in.readLong());
+
+        String[] prefixes = new String[in.readCount()];
+        for (int i = 0; i < prefixes.length; i++) {
+            String prefix = in.readString();
+            if (prefix == null) {
+                throw new IOException("null url prefix");
+            }
+            prefixes[i] = InternedUrls.intern(prefix);
+        }
+        List<String> impressionPixels = in.readUrls(prefixes);
+        List<String> clickthroughPixels = in.readUrls(prefixes);
+
+        if (advertiser == null || clickthroughUrl == null || imageUrl == null || caption == null
+                || heading == null) {
+            throw new IOException("binary auction answer misses a required field");
+        }
+        return AuctionAnswer.fill(new AuctionResponse(advertiser, clickthroughUrl, ImageUrls.forceHttp(imageUrl),
+                caption, heading, impressionPixels, clickthroughPixels, ttlSeconds, price, logoUrl, format));
+    }
+
+    @Override
+    public byte[] encode(AuctionAnswer answer) {
+        Writer out = new Writer();
+        out.writeByte(MAGIC_0);
+        out.writeByte(MAGIC_1);
+        out.writeByte(VERSION);
+        if (!answer.isFill()) {
+            out.writeByte(NO_FILL);
+            out.writeString(answer.getStatus());
+            return out.toByteArray();
+        }
+
+        AuctionResponse response = answer.getResponse();
+        out.writeByte(FILL);
+        out.writeString(response.getAdvertiserName());
+        out.writeString(response.getClickthroughUrl());
+        out.writeString(response.getImageUrl());
+        out.writeString(response.getCaption());
+        out.writeString(response.getHeading());
+        out.writeString(response.getLogoUrl());
+        out.writeString(response.getFormat());
+        out.writeVarint(response.getTtlSeconds());
+        out.writeLong(Double.doubleToLongBits(response.getPrice()));
+
+        List<String> pixels = new ArrayList<>(response.getImpressionPixels());
+        pixels.addAll(response.getClickthroughPixels());
+        String[] flat = InternedUrls.flatten(pixels);
+        Map<String, Integer> prefixIndex = new HashMap<>();
+        List<String> prefixes = new ArrayList<>();
+        for (int i = 0; i < flat.length; i += 2) {
+            if (!prefixIndex.containsKey(flat[i])) {
+                prefixIndex.put(flat[i], prefixes.size());
+                prefixes.add(flat[i]);
+            }
+        }
+        out.writeVarint(prefixes.size());
+        for (String prefix: prefixes) {
+            out.writeString(prefix);
+        }
+        int impressions = response.getImpressionPixels().size();
+        out.writeUrls(flat, 0, impressions, prefixIndex);
+        out.writeUrls(flat, impressions, pixels.size(), prefixIndex);
+        return out.toByteArray();
+    }
+
+    private static final class Writer extends ByteArrayOutputStream {
+
+        void writeByte(int b) {
+            write(b);
+        }
+
+        void writeVarint(long value) {
+            while ((value & ~0x7fL) != 0) {
+                write((int) ((value & 0x7f) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                write((int) (value >>> shift));
+            }
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(UTF_8);
+            writeVarint(bytes.length + 1);
+            write(bytes, 0, bytes.length);
+        }
+
+        // pixels from..to of a flattened array, as prefix index and query
+        void writeUrls(String[] flat, int from, int to, Map<String, Integer> prefixIndex) {
+            writeVarint(to - from);
+            for (int i = from; i < to; i++) {
+                writeVarint(prefixIndex.get(flat[i * 2]));
+                writeString(flat[i * 2 + 1]);
+            }
+        }
+    }
+
+    private static final class Reader {
+
+        private final byte[] data;
+        private int position;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        int readByte() throws EOFException {
+            if (position >= data.length) {
+                throw new EOFException();
+            }
+            return data[position++] & 0xff;
+        }
+
+        long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("malformed varint");
+        }
+
+        long readLong() throws EOFException {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | readByte();
+            }
+            return value;
+        }
+
+        // every counted item takes at least a byte, a larger count is corrupt
+        int readCount() throws IOException {
+            long count = readVarint();
+            if (count < 0 || count > data.length - position) {
+                throw new IOException("malformed count " + count);
+            }
+            return (int) count;
+        }
+
+        String readString() throws IOException {
+            long length = readVarint() - 1;
+            if (length < 0) {
+                return null;
+            }
+            if (length > data.length - position) {
+                throw new EOFException();
+            }
+            String value = new String(data, position, (int) length, UTF_8);
+            position += length;
+            return value;
+        }
+
+        List<String> readUrls(String[] prefixes) throws IOException {
+            int count = readCount();
+            List<String> urls = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long prefix = readVarint();
+                if (prefix < 0 || prefix >= prefixes.length) {
+                    throw new IOException("unknown url prefix " + prefix);
+                }
+                String query = readString();
+                urls.add(query == null ? prefixes[(int) prefix] : prefixes[(int) prefix].concat(query));
+            }
+            return urls;
+        }
+    }
+}
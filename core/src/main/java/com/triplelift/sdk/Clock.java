@@ -0,0 +1,6 @@
+package com.triplelift.sdk;
+
+/** Millisecond time source, tests drive a fake one */
+public interface Clock {
+    long now();
+}
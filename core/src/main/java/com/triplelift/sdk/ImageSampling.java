@@ -0,0 +1,62 @@
+package com.triplelift.sdk;
+
+/**
+ * Target size and power of two subsampling for decoding a creative into a view, the same rules
+ * Volley's ImageRequest applies, so decodes done off its dispatcher threads size bitmaps alike.
+ */
+public class ImageSampling {
+
+    /** Keeps the aspect ratio and fits inside the bounds */
+    public static final int FIT = 0;
+    /** Stretches to the bounds */
+    public static final int FIT_XY = 1;
+    /** Keeps the aspect ratio and covers the bounds */
+    public static final int CENTER_CROP = 2;
+
+    private ImageSampling() {
+    }
+
+    /**
+     * One dimension of the decoded bitmap, maxPrimary and maxSecondary of 0 meaning unbounded.
+     * Call with width first for the width and height first for the height.
+     */
+    public static int resizedDimension(int maxPrimary, int maxSecondary, int actualPrimary, int actualSecondary,
+                                       int mode) {
+        if (maxPrimary == 0 && maxSecondary == 0) {
+            return actualPrimary;
+        }
+        if (mode == FIT_XY) {
+            return maxPrimary == 0 ? actualPrimary : maxPrimary;
+        }
+        if (maxPrimary == 0) {
+            double ratio = (double) maxSecondary / actualSecondary;
+            return (int) (actualPrimary * ratio);
+        }
+        if (maxSecondary == 0) {
+            return maxPrimary;
+        }
+
+        double ratio = (double) actualSecondary / actualPrimary;
+        int resized = maxPrimary;
+        if (mode == CENTER_CROP) {
+            if (resized * ratio < maxSecondary) {
+                resized = (int) (maxSecondary / ratio);
+            }
+            return resized;
+        }
+        if (resized * ratio > maxSecondary) {
+            resized = (int) (maxSecondary / ratio);
+        }
+        return resized;
+    }
+
+    /** Largest power of two the decoder can subsample by and still cover the desired size */
+    public static int sampleSize(int actualWidth, int actualHeight, int desiredWidth, int desiredHeight) {
+        double ratio = Math.min((double) actualWidth / desiredWidth, (double) actualHeight / desiredHeight);
+        int sampleSize = 1;
+        while (sampleSize * 2 <= ratio) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+}
@@ -0,0 +1,61 @@
+package com.triplelift.sdk;
+
+/** Rewrites creative URLs so the image server resizes them for the slot they are shown in */
+public class ImageUrls {
+
+    private ImageUrls() {
+    }
+
+    public static String sized(String imageUrl, AdSizeBucket sizeBucket) {
+        return sized(imageUrl, sizeBucket.getWidth(), sizeBucket.getHeight());
+    }
+
+    /** Replaces width and height query params, or appends them */
+    public static String sized(String imageUrl, int width, int height) {
+        if (imageUrl == null || imageUrl.isEmpty()) {
+            return imageUrl;
+        }
+        String url = setQueryParam(imageUrl, "width", Integer.toString(width));
+        return setQueryParam(url, "height", Integer.toString(height));
+    }
+
+    /** The sandbox image server doesn't support https */
+    public static String forceHttp(String imageUrl) {
+        if (imageUrl != null && imageUrl.startsWith("https://")) {
+            return "http://" + imageUrl.substring("https://".length());
+        }
+        return imageUrl;
+    }
+
+    static String setQueryParam(String url, String key, String value) {
+        int fragment = url.indexOf('#');
+        String suffix = fragment < 0 ? "" : url.substring(fragment);
+        String base = fragment < 0 ? url : url.substring(0, fragment);
+
+        int query = base.indexOf('?');
+        if (query < 0) {
+            return base + '?' + key + '=' + value + suffix;
+        }
+
+        int start = query + 1;
+        while (start <= base.length()) {
+            int end = base.indexOf('&', start);
+            if (end < 0) {
+                end = base.length();
+            }
+            if (base.startsWith(key, start) && start + key.length() < base.length()
+                    && base.charAt(start + key.length()) == '=') {
+                return base.substring(0, start) + key + '=' + value + base.substring(end) + suffix;
+            }
+            start = end + 1;
+        }
+
+        char separator = base.endsWith("?") || base.endsWith("&") ? 0 : '&';
+        StringBuilder sb = new StringBuilder(base.length() + key.length() + value.length() + 2 + suffix.length());
+        sb.append(base);
+        if (separator != 0) {
+            sb.append(separator);
+        }
+        return sb.append(key).append('=').append(value).append(suffix).toString();
+    }
+}
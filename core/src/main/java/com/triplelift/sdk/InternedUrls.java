@@ -0,0 +1,60 @@
+package com.triplelift.sdk;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracking URLs of one exchange differ only in their query, so they are kept split at the '?'
+ * with the part before it shared between every ad. Flattened arrays hold prefix and query pairs.
+ */
+public final class InternedUrls {
+
+    // a handful of pixel hosts in practice, the bound only stops a misbehaving exchange growing it
+    static final int MAX_PREFIXES = 256;
+
+    private static final Map<String, String> PREFIXES = new HashMap<>();
+
+    private InternedUrls() {
+    }
+
+    /** The shared instance of the given prefix, or the prefix itself once the pool is full */
+    public static String intern(String prefix) {
+        synchronized (PREFIXES) {
+            String interned = PREFIXES.get(prefix);
+            if (interned != null) {
+                return interned;
+            }
+            if (PREFIXES.size() < MAX_PREFIXES) {
+                PREFIXES.put(prefix, prefix);
+            }
+            return prefix;
+        }
+    }
+
+    /** Prefix and query of every URL, one pair after the other */
+    public static String[] flatten(List<String> urls) {
+        String[] flat = new String[urls.size() * 2];
+        for (int i = 0; i < urls.size(); i++) {
+            String url = urls.get(i);
+            int query = url.indexOf('?') + 1;
+            if (query == 0) {
+                query = url.length();
+            }
+            flat[i * 2] = intern(url.substring(0, query));
+            flat[i * 2 + 1] = query == url.length() ? "" : url.substring(query);
+        }
+        return flat;
+    }
+
+    /** The index-th URL of a flattened array */
+    public static String get(String[] flat, int index) {
+        return flat[index * 2].concat(flat[index * 2 + 1]);
+    }
+
+    static int size() {
+        synchronized (PREFIXES) {
+            return PREFIXES.size();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.triplelift.sdk;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+/** The exchange's original JSON answers, read with AuctionResponseParser */
+public class JsonAuctionResponseCodec implements AuctionResponseCodec {
+
+    public static final String CONTENT_TYPE = "application/json";
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public AuctionAnswer decode(byte[] body, String charset) throws IOException {
+        try {
+            JSONObject json = new JSONObject(new String(body, charset != null ? charset : "UTF-8"));
+            AuctionResponse response = AuctionResponseParser.parse(json);
+            return response != null ? AuctionAnswer.fill(response) : AuctionAnswer.noFill(json.optString("status"));
+        } catch (JSONException e) {
+            throw new IOException("malformed auction answer", e);
+        }
+    }
+
+    @Override
+    public byte[] encode(AuctionAnswer answer) throws IOException {
+        try {
+            return toJson(answer).toString().getBytes("UTF-8");
+        } catch (JSONException e) {
+            throw new IOException("unencodable auction answer", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    static JSONObject toJson(AuctionAnswer answer) throws JSONException {
+        JSONObject json = new JSONObject();
+        if (!answer.isFill()) {
+            return json.put("status", answer.getStatus());
+        }
+        AuctionResponse response = answer.getResponse();
+        json.put("advertiser_name", response.getAdvertiserName());
+        json.put("clickthrough_url", response.getClickthroughUrl());
+        json.put("image_url", response.getImageUrl());
+        json.put("caption", response.getCaption());
+        json.put("heading", response.getHeading());
+        json.put("impression_pixels", new JSONArray(response.getImpressionPixels()));
+        json.put("clickthrough_pixels", new JSONArray(response.getClickthroughPixels()));
+        if (response.getTtlSeconds() > 0) {
+            json.put("ttl", response.getTtlSeconds());
+        }
+        if (response.getPrice() > 0) {
+            json.put("price", response.getPrice());
+        }
+        json.putOpt("logo_url", response.getLogoUrl());
+        json.putOpt("format", response.getFormat());
+        return json;
+    }
+}
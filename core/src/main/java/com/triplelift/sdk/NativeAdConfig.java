@@ -0,0 +1,216 @@
+package com.triplelift.sdk;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * Tuning of the ad pipeline. Immutable, built with a Builder or read from the JSON the app bundles
+ * as res/raw/triplelift_config.json. Controller.init takes the SDK-wide one, ad units can each be
+ * given their own.
+ */
+public final class NativeAdConfig {
+
+    public static final NativeAdConfig DEFAULT = new Builder().build();
+
+    private final int minPoolSize;
+    private final int maxPoolDepth;
+    private final int requestTimeoutMillis;
+    private final int[] retryDelaysMillis;
+    private final long defaultAdTtlMillis;
+    private final int fanOutDeadlineMillis;
+    private final int placementCapacity;
+    private final float imageCacheHeapFraction;
+    private final long staleGraceMillis;
+
+    private NativeAdConfig(Builder builder) {
+        this.minPoolSize = builder.minPoolSize;
+        this.maxPoolDepth = builder.maxPoolDepth;
+        this.requestTimeoutMillis = builder.requestTimeoutMillis;
+        this.retryDelaysMillis = builder.retryDelaysMillis.clone();
+        this.defaultAdTtlMillis = builder.defaultAdTtlMillis;
+        this.fanOutDeadlineMillis = builder.fanOutDeadlineMillis;
+        this.placementCapacity = builder.placementCapacity;
+        this.imageCacheHeapFraction = builder.imageCacheHeapFraction;
+        this.staleGraceMillis = builder.staleGraceMillis;
+    }
+
+    /** The given JSON's settings over the defaults, keys as in the README */
+    public static NativeAdConfig fromJson(JSONObject json) throws JSONException {
+        return new Builder().apply(json).build();
+    }
+
+    /** Ads kept ready per placement and size even when the feed is not moving */
+    public int getMinPoolSize() {
+        return minPoolSize;
+    }
+
+    /** Upper bound on the ads pooled ahead of a fast scroll */
+    public int getMaxPoolDepth() {
+        return maxPoolDepth;
+    }
+
+    public int getRequestTimeoutMillis() {
+        return requestTimeoutMillis;
+    }
+
+    /** Waits before each retry of failed refills, the ladder starts over once they are used up */
+    public int[] getRetryDelaysMillis() {
+        return retryDelaysMillis.clone();
+    }
+
+    /** How long an ad is served when the auction gave it no TTL */
+    public long getDefaultAdTtlMillis() {
+        return defaultAdTtlMillis;
+    }
+
+    public int getFanOutDeadlineMillis() {
+        return fanOutDeadlineMillis;
+    }
+
+    /** Ad slots a feed placement indexes */
+    public int getPlacementCapacity() {
+        return placementCapacity;
+    }
+
+    /** Share of the heap the decoded creative cache may use */
+    public float getImageCacheHeapFraction() {
+        return imageCacheHeapFraction;
+    }
+
+    /**
+     * How long past its expiry a pooled ad may still be served, only when the pool has no fresh one
+     * and with a replacement auction started at once. 0, the default, never serves an expired ad.
+     */
+    public long getStaleGraceMillis() {
+        return staleGraceMillis;
+    }
+
+    public Builder buildUpon() {
+        return new Builder(this);
+    }
+
+    public static final class Builder {
+
+        private int minPoolSize = 1;
+        private int maxPoolDepth = 4;
+        private int requestTimeoutMillis = 5 * 1000;
+        private int[] retryDelaysMillis = new int[]{1000, 1000 * 5, 1000 * 30, 1000 * 60, 1000 * 60 * 3};
+        private long defaultAdTtlMillis = 5 * 60 * 1000;
+        private int fanOutDeadlineMillis = 1000;
+        private int placementCapacity = 50;
+        private float imageCacheHeapFraction = 1 / 8f;
+        private long staleGraceMillis = 0;
+
+        public Builder() {
+        }
+
+        public Builder(NativeAdConfig config) {
+            this.minPoolSize = config.minPoolSize;
+            this.maxPoolDepth = config.maxPoolDepth;
+            this.requestTimeoutMillis = config.requestTimeoutMillis;
+            this.retryDelaysMillis = config.retryDelaysMillis;
+            this.defaultAdTtlMillis = config.defaultAdTtlMillis;
+            this.fanOutDeadlineMillis = config.fanOutDeadlineMillis;
+            this.placementCapacity = config.placementCapacity;
+            this.imageCacheHeapFraction = config.imageCacheHeapFraction;
+            this.staleGraceMillis = config.staleGraceMillis;
+        }
+
+        public Builder setMinPoolSize(int minPoolSize) {
+            this.minPoolSize = minPoolSize;
+            return this;
+        }
+
+        public Builder setMaxPoolDepth(int maxPoolDepth) {
+            this.maxPoolDepth = maxPoolDepth;
+            return this;
+        }
+
+        public Builder setRequestTimeoutMillis(int requestTimeoutMillis) {
+            this.requestTimeoutMillis = requestTimeoutMillis;
+            return this;
+        }
+
+        public Builder setRetryDelaysMillis(int... retryDelaysMillis) {
+            this.retryDelaysMillis = retryDelaysMillis.clone();
+            return this;
+        }
+
+        public Builder setDefaultAdTtlMillis(long defaultAdTtlMillis) {
+            this.defaultAdTtlMillis = defaultAdTtlMillis;
+            return this;
+        }
+
+        public Builder setFanOutDeadlineMillis(int fanOutDeadlineMillis) {
+            this.fanOutDeadlineMillis = fanOutDeadlineMillis;
+            return this;
+        }
+
+        public Builder setPlacementCapacity(int placementCapacity) {
+            this.placementCapacity = placementCapacity;
+            return this;
+        }
+
+        public Builder setImageCacheHeapFraction(float imageCacheHeapFraction) {
+            this.imageCacheHeapFraction = imageCacheHeapFraction;
+            return this;
+        }
+
+        public Builder setStaleGraceMillis(long staleGraceMillis) {
+            this.staleGraceMillis = staleGraceMillis;
+            return this;
+        }
+
+        /** Takes every key present in the JSON, leaves the rest as they are */
+        public Builder apply(JSONObject json) throws JSONException {
+            minPoolSize = json.optInt("min_pool_size", minPoolSize);
+            maxPoolDepth = json.optInt("max_pool_depth", maxPoolDepth);
+            requestTimeoutMillis = json.optInt("request_timeout_ms", requestTimeoutMillis);
+            defaultAdTtlMillis = json.optLong("default_ad_ttl_ms", defaultAdTtlMillis);
+            fanOutDeadlineMillis = json.optInt("fan_out_deadline_ms", fanOutDeadlineMillis);
+            placementCapacity = json.optInt("placement_capacity", placementCapacity);
+            imageCacheHeapFraction = (float) json.optDouble("image_cache_heap_fraction", imageCacheHeapFraction);
+            staleGraceMillis = json.optLong("stale_grace_ms", staleGraceMillis);
+            JSONArray retryDelays = json.optJSONArray("retry_delays_ms");
+            if (retryDelays != null) {
+                retryDelaysMillis = new int[retryDelays.length()];
+                for (int i = 0; i < retryDelaysMillis.length; i++) {
+                    retryDelaysMillis[i] = retryDelays.getInt(i);
+                }
+            }
+            return this;
+        }
+
+        public NativeAdConfig build() {
+            check(minPoolSize >= 1, "min_pool_size");
+            check(maxPoolDepth >= minPoolSize, "max_pool_depth");
+            check(requestTimeoutMillis > 0, "request_timeout_ms");
+            check(retryDelaysMillis.length > 0, "retry_delays_ms");
+            check(defaultAdTtlMillis > 0, "default_ad_ttl_ms");
+            check(fanOutDeadlineMillis > 0, "fan_out_deadline_ms");
+            check(placementCapacity > 0, "placement_capacity");
+            check(imageCacheHeapFraction > 0 && imageCacheHeapFraction < 1, "image_cache_heap_fraction");
+            check(staleGraceMillis >= 0, "stale_grace_ms");
+            return new NativeAdConfig(this);
+        }
+
+        private static void check(boolean valid, String key) {
+            if (!valid) {
+                throw new IllegalArgumentException("invalid " + key);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NativeAdConfig{minPoolSize=" + minPoolSize + ", maxPoolDepth=" + maxPoolDepth
+                + ", requestTimeoutMillis=" + requestTimeoutMillis
+                + ", retryDelaysMillis=" + Arrays.toString(retryDelaysMillis)
+                + ", defaultAdTtlMillis=" + defaultAdTtlMillis + ", fanOutDeadlineMillis=" + fanOutDeadlineMillis
+                + ", placementCapacity=" + placementCapacity + ", imageCacheHeapFraction=" + imageCacheHeapFraction
+                + ", staleGraceMillis=" + staleGraceMillis + "}";
+    }
+}
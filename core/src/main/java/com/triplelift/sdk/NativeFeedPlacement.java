@@ -0,0 +1,281 @@
+package com.triplelift.sdk;
+
+public class NativeFeedPlacement<T> {
+
+    private static final int NOT_FOUND = -1;
+
+    private final int capacity;
+    private final int repeatInterval;
+    // Position of every slot as if none of the slots before it were live, the content rows before it
+    private final int[] basePositions;
+    private final Object[] placedNativeAds;
+    // Fenwick tree counting live slots, a slot's position is its base plus the live slots before it
+    private final int[] liveTree;
+    int adsLive = 0;
+
+    protected NativeFeedPlacement(NativeFeedPositions nativeFeedPositions) {
+        this(nativeFeedPositions, NativeAdConfig.DEFAULT.getPlacementCapacity());
+    }
+
+    protected NativeFeedPlacement(NativeFeedPositions nativeFeedPositions, int capacity) {
+        this.capacity = capacity;
+        this.basePositions = new int[capacity];
+        this.placedNativeAds = new Object[capacity];
+        this.liveTree = new int[capacity + 1];
+
+        // an interval below 2 would stack ads on top of each other
+        this.repeatInterval = Math.max(nativeFeedPositions.getRepeatInterval(), 2);
+        int[] fixedPositions = nativeFeedPositions.getFixedPositions();
+
+        int current = 0;
+        int adsPlaced = 0;
+        if (fixedPositions != null) {
+            for (int position: fixedPositions) {
+                if (position == 0 || adsPlaced == capacity) {
+                    continue;
+                }
+                current = position - adsPlaced;
+                basePositions[adsPlaced++] = current;
+            }
+        }
+
+        fillSlotsFrom(adsPlaced, current);
+    }
+
+    // repeats the interval after the given base for slots from..capacity
+    private void fillSlotsFrom(int from, int current) {
+        for (int slot = from; slot < capacity; slot++) {
+            current = current + repeatInterval - 1;
+            basePositions[slot] = current;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getNativeAd(int position) {
+        int slot = findSlot(position);
+        if (slot == NOT_FOUND) {
+            return null;
+        }
+
+        return (T) placedNativeAds[slot];
+    }
+
+    public void placeNativeAd(T nativeAd, int position) {
+        int slot = findSlot(position);
+        if (slot == NOT_FOUND || placedNativeAds[slot] != null) {
+            return;
+        }
+
+        placedNativeAds[slot] = nativeAd;
+        for (int i = slot + 1; i <= capacity; i += i & -i) {
+            liveTree[i]++;
+        }
+        adsLive++;
+    }
+
+    public boolean isAdPosition(int position) {
+        return findSlot(position) != NOT_FOUND;
+    }
+
+    public boolean isAdPositionLive(int position) {
+        int slot = findSlot(position);
+        return slot != NOT_FOUND && placedNativeAds[slot] != null;
+    }
+
+    public int adsLive() {
+        return adsLive;
+    }
+
+    public int getContentPosition(int position) {
+        return position - liveBefore(lowerBound(position));
+    }
+
+    /** Ad slots with no ad yet at positions in [fromPosition, toPosition) */
+    public int emptySlotsBetween(int fromPosition, int toPosition) {
+        if (toPosition <= fromPosition) {
+            return 0;
+        }
+        int first = lowerBound(fromPosition);
+        int last = lowerBound(toPosition);
+        return (last - first) - (liveBefore(last) - liveBefore(first));
+    }
+
+    /**
+     * count content rows were inserted before the row at contentPosition. Slots after them, live or
+     * not, move down with their content, the ones before are untouched.
+     */
+    public void insertContent(int contentPosition, int count) {
+        if (count <= 0) {
+            return;
+        }
+        // the live slot order does not change, neither does the live tree
+        for (int slot = firstSlotAfter(contentPosition); slot < capacity; slot++) {
+            basePositions[slot] += count;
+        }
+    }
+
+    /**
+     * count content rows were removed from contentPosition on. Slots with content removed on both
+     * sides go, with their ads, slots after the range move up and new empty slots repeat the
+     * interval at the end. Returns the number of placed ads dropped.
+     */
+    public int removeContent(int contentPosition, int count) {
+        if (count <= 0) {
+            return 0;
+        }
+        int end = contentPosition + count;
+        int from = firstSlotAfter(contentPosition);
+        boolean slotAtEdge = from > 0 && basePositions[from - 1] == contentPosition;
+        int kept = from;
+        int dropped = 0;
+        for (int slot = from; slot < capacity; slot++) {
+            int base = basePositions[slot];
+            // inside the removed run, or moving up next to the slot already at its edge
+            boolean gone = base < end || (base == end && slotAtEdge);
+            if (gone) {
+                if (placedNativeAds[slot] != null) {
+                    dropped++;
+                }
+                continue;
+            }
+            basePositions[kept] = base - count;
+            placedNativeAds[kept] = placedNativeAds[slot];
+            kept++;
+        }
+        if (kept == capacity) {
+            return 0;
+        }
+
+        for (int slot = kept; slot < capacity; slot++) {
+            placedNativeAds[slot] = null;
+        }
+        fillSlotsFrom(kept, kept > 0 ? basePositions[kept - 1] : 0);
+        adsLive -= dropped;
+        rebuildLiveTree();
+        return dropped;
+    }
+
+    /** The slots and the ads placed in them, to be restored into a placement of the same capacity */
+    public State<T> saveState() {
+        int[] liveSlots = new int[adsLive];
+        Object[] nativeAds = new Object[adsLive];
+        int live = 0;
+        for (int slot = 0; slot < capacity && live < adsLive; slot++) {
+            if (placedNativeAds[slot] != null) {
+                liveSlots[live] = slot;
+                nativeAds[live++] = placedNativeAds[slot];
+            }
+        }
+        return new State<>(basePositions.clone(), liveSlots, nativeAds);
+    }
+
+    /** Takes over a saved placement, false and nothing changed when the capacity differs */
+    public boolean restoreState(State<T> state) {
+        if (state.basePositions.length != capacity) {
+            return false;
+        }
+        System.arraycopy(state.basePositions, 0, basePositions, 0, capacity);
+        for (int slot = 0; slot < capacity; slot++) {
+            placedNativeAds[slot] = null;
+        }
+        for (int i = 0; i < state.liveSlots.length; i++) {
+            placedNativeAds[state.liveSlots[i]] = state.nativeAds[i];
+        }
+        adsLive = state.liveSlots.length;
+        rebuildLiveTree();
+        return true;
+    }
+
+    /** Only the live slots carry an ad, the rest is the slot bases */
+    public static final class State<T> {
+
+        private final int[] basePositions;
+        private final int[] liveSlots;
+        private final Object[] nativeAds;
+
+        private State(int[] basePositions, int[] liveSlots, Object[] nativeAds) {
+            this.basePositions = basePositions;
+            this.liveSlots = liveSlots;
+            this.nativeAds = nativeAds;
+        }
+
+        public int adsLive() {
+            return liveSlots.length;
+        }
+
+        /** The ad in the index-th live slot, in feed order */
+        @SuppressWarnings("unchecked")
+        public T getNativeAd(int index) {
+            return (T) nativeAds[index];
+        }
+    }
+
+    private void rebuildLiveTree() {
+        for (int i = 0; i <= capacity; i++) {
+            liveTree[i] = 0;
+        }
+        for (int slot = 0; slot < capacity; slot++) {
+            if (placedNativeAds[slot] != null) {
+                for (int i = slot + 1; i <= capacity; i += i & -i) {
+                    liveTree[i]++;
+                }
+            }
+        }
+    }
+
+    // First slot with more than contentPosition content rows before it, capacity if there is none
+    private int firstSlotAfter(int contentPosition) {
+        int low = 0;
+        int high = capacity;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (basePositions[mid] <= contentPosition) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int slotPosition(int slot) {
+        return basePositions[slot] + liveBefore(slot);
+    }
+
+    // Number of live slots in [0, slot)
+    private int liveBefore(int slot) {
+        int live = 0;
+        for (int i = slot; i > 0; i -= i & -i) {
+            live += liveTree[i];
+        }
+        return live;
+    }
+
+    // First slot whose position is at or after the given position, capacity if there is none
+    private int lowerBound(int position) {
+        int low = 0;
+        int high = capacity;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (slotPosition(mid) < position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int findSlot(int position) {
+        int slot = lowerBound(position);
+        if (slot < capacity && slotPosition(slot) == position) {
+            return slot;
+        }
+        return NOT_FOUND;
+    }
+
+}
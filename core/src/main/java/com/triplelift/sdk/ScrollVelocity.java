@@ -0,0 +1,52 @@
+package com.triplelift.sdk;
+
+/**
+ * Smoothed scroll speed in rows per second, fed with the positions the list binds as they come
+ * into view. Positive when scrolling towards the end of the feed.
+ */
+public class ScrollVelocity {
+
+    // samples further apart than this mean the list came to rest in between
+    static final long IDLE_MILLIS = 500;
+    private static final double SMOOTHING = 0.4;
+
+    private int lastPosition = -1;
+    private long lastTime;
+    private double rowsPerSecond;
+
+    public void onPositionVisible(int position, long timeMillis) {
+        if (lastPosition == -1 || timeMillis - lastTime > IDLE_MILLIS) {
+            rowsPerSecond = 0;
+        } else if (timeMillis <= lastTime || position == lastPosition) {
+            // same frame or no movement, the next sample measures across it
+            return;
+        } else {
+            double sample = (position - lastPosition) * 1000.0 / (timeMillis - lastTime);
+            rowsPerSecond = rowsPerSecond + SMOOTHING * (sample - rowsPerSecond);
+        }
+        lastPosition = position;
+        lastTime = timeMillis;
+    }
+
+    /** Rows per second as of the given time, zero once the list has been idle */
+    public double getRowsPerSecond(long timeMillis) {
+        if (lastPosition == -1 || timeMillis - lastTime > IDLE_MILLIS) {
+            return 0;
+        }
+        return rowsPerSecond;
+    }
+
+    /** Rows the list will move through in the next windowMillis at the current speed, signed */
+    public int rowsWithin(long windowMillis, long timeMillis) {
+        return (int) Math.round(getRowsPerSecond(timeMillis) * windowMillis / 1000.0);
+    }
+
+    public int getLastPosition() {
+        return lastPosition;
+    }
+
+    public void reset() {
+        lastPosition = -1;
+        rowsPerSecond = 0;
+    }
+}
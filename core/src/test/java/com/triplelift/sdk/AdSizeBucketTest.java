@@ -0,0 +1,35 @@
+package com.triplelift.sdk;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class AdSizeBucketTest {
+
+    @Test
+    public void roundsWidthUpToNextBucket() {
+        assertEquals(480, AdSizeBucket.forSize(360, 222).getWidth());
+        assertEquals(720, AdSizeBucket.forSize(720, 445).getWidth());
+        assertEquals(1080, AdSizeBucket.forSize(1000, 618).getWidth());
+    }
+
+    @Test
+    public void clampsToLargestBucket() {
+        assertEquals(1440, AdSizeBucket.forSize(2560, 1582).getWidth());
+    }
+
+    @Test
+    public void heightFollowsClosestAspectRatio() {
+        AdSizeBucket bucket = AdSizeBucket.forSize(700, 433);
+
+        assertEquals(720, bucket.getWidth());
+        assertEquals(445, bucket.getHeight());
+        assertEquals(720, AdSizeBucket.forSize(700, 700).getHeight());
+    }
+
+    @Test
+    public void nearbySizesShareABucket() {
+        assertSame(AdSizeBucket.forSize(701, 433), AdSizeBucket.forSize(719, 444));
+    }
+}
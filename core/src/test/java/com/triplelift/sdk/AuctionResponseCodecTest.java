@@ -0,0 +1,93 @@
+package com.triplelift.sdk;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AuctionResponseCodecTest {
+
+    private static final List<AuctionResponseCodec> CODECS =
+            Arrays.asList(AuctionResponseCodecs.BINARY, AuctionResponseCodecs.JSON);
+
+    @Test
+    public void binaryRoundTripsAFill() throws Exception {
+        AuctionResponse response = AuctionResponseParser.parse(AuctionResponseParserTest.AUCTION_RESPONSE
+                .replaceFirst("\\}$", ",\"ttl\":120,\"price\":2.5,\"format\":\"compact\"}"));
+
+        AuctionAnswer answer = roundTrip(AuctionResponseCodecs.BINARY, AuctionAnswer.fill(response));
+
+        assertTrue(answer.isFill());
+        AuctionResponse decoded = answer.getResponse();
+        assertEquals(response.getAdvertiserName(), decoded.getAdvertiserName());
+        assertEquals(response.getClickthroughUrl(), decoded.getClickthroughUrl());
+        assertEquals(response.getImageUrl(), decoded.getImageUrl());
+        assertEquals(response.getCaption(), decoded.getCaption());
+        assertEquals(response.getHeading(), decoded.getHeading());
+        assertEquals(response.getImpressionPixels(), decoded.getImpressionPixels());
+        assertEquals(response.getClickthroughPixels(), decoded.getClickthroughPixels());
+        assertEquals(120, decoded.getTtlSeconds());
+        assertEquals(2.5, decoded.getPrice(), 0.0);
+        assertNull(decoded.getLogoUrl());
+        assertEquals("compact", decoded.getFormat());
+    }
+
+    @Test
+    public void hugeTtlIsCappedSoTheExpiryCannotOverflow() throws Exception {
+        AuctionResponse response = AuctionResponseParser.parse(AuctionResponseParserTest.AUCTION_RESPONSE
+                .replaceFirst("\\}$", ",\"ttl\":" + Long.MAX_VALUE + "}"));
+        assertEquals(AuctionResponse.MAX_TTL_SECONDS, response.getTtlSeconds());
+
+        for (AuctionResponseCodec codec: CODECS) {
+            AuctionAnswer answer = roundTrip(codec, AuctionAnswer.fill(response));
+            assertEquals(AuctionResponse.MAX_TTL_SECONDS, answer.getResponse().getTtlSeconds());
+        }
+    }
+
+    @Test
+    public void bothCodecsRoundTripANoFill() throws Exception {
+        for (AuctionResponseCodec codec: CODECS) {
+            AuctionAnswer answer = roundTrip(codec, AuctionAnswer.noFill("no_bid"));
+            assertFalse(answer.isFill());
+            assertEquals("no_bid", answer.getStatus());
+        }
+    }
+
+    @Test
+    public void binaryTakesAtMostTwoThirdsOfJson() throws Exception {
+        AuctionAnswer answer = AuctionAnswer.fill(AuctionResponseParser.parse(AuctionResponseParserTest.AUCTION_RESPONSE));
+
+        // the bytes per ad on the wire, the benchmark only times the decode
+        int json = AuctionResponseCodecs.JSON.encode(answer).length;
+        int binary = AuctionResponseCodecs.BINARY.encode(answer).length;
+        assertTrue("binary takes " + binary + " bytes per ad against " + json + " for json", binary * 3 <= json * 2);
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedBinaryFails() throws Exception {
+        byte[] body = AuctionResponseCodecs.BINARY.encode(
+                AuctionAnswer.fill(AuctionResponseParser.parse(AuctionResponseParserTest.AUCTION_RESPONSE)));
+        AuctionResponseCodecs.BINARY.decode(Arrays.copyOf(body, body.length - 4), null);
+    }
+
+    @Test
+    public void negotiatesByContentType() {
+        assertEquals("application/vnd.triplelift.auction, application/json;q=0.8", AuctionResponseCodecs.accept(CODECS));
+        assertSame(AuctionResponseCodecs.BINARY,
+                AuctionResponseCodecs.forContentType(CODECS, "application/vnd.triplelift.auction"));
+        assertSame(AuctionResponseCodecs.JSON,
+                AuctionResponseCodecs.forContentType(CODECS, "application/json; charset=utf-8"));
+        assertSame(AuctionResponseCodecs.JSON, AuctionResponseCodecs.forContentType(CODECS, null));
+    }
+
+    private static AuctionAnswer roundTrip(AuctionResponseCodec codec, AuctionAnswer answer) throws IOException {
+        return codec.decode(codec.encode(answer), "UTF-8");
+    }
+}
@@ -0,0 +1,63 @@
+package com.triplelift.sdk;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class AuctionResponseParserTest {
+
+    static final String AUCTION_RESPONSE = "{\"advertiser_name\":\"Brand\","
+            + "\"clickthrough_url\":\"http://example.com/landing\","
+            + "\"image_url\":\"https://img.3lift.com/?url=creative.jpg\","
+            + "\"caption\":\"Caption\",\"heading\":\"Heading\","
+            + "\"impression_pixels\":[\"http://eb2.3lift.com/mbi?id=1\",\"http://eb2.3lift.com/mbi?id=2\"],"
+            + "\"clickthrough_pixels\":[\"http://eb2.3lift.com/mbc?id=1\"]}";
+
+    @Test
+    public void parsesFilledAuction() throws JSONException {
+        AuctionResponse response = AuctionResponseParser.parse(AUCTION_RESPONSE);
+
+        assertEquals("Brand", response.getAdvertiserName());
+        assertEquals("http://example.com/landing", response.getClickthroughUrl());
+        assertEquals("http://img.3lift.com/?url=creative.jpg", response.getImageUrl());
+        assertEquals("Caption", response.getCaption());
+        assertEquals("Heading", response.getHeading());
+        assertEquals(Arrays.asList("http://eb2.3lift.com/mbi?id=1", "http://eb2.3lift.com/mbi?id=2"),
+                response.getImpressionPixels());
+        assertEquals(Arrays.asList("http://eb2.3lift.com/mbc?id=1"), response.getClickthroughPixels());
+        assertEquals(0, response.getTtlSeconds());
+        assertNull(response.getLogoUrl());
+        assertNull(response.getFormat());
+    }
+
+    @Test
+    public void readsFormatWhenPresent() throws JSONException {
+        AuctionResponse response = AuctionResponseParser.parse(
+                AUCTION_RESPONSE.substring(0, AUCTION_RESPONSE.length() - 1) + ",\"format\":\"compact\"}");
+
+        assertEquals("compact", response.getFormat());
+    }
+
+    @Test
+    public void readsTtlAndPriceWhenPresent() throws JSONException {
+        AuctionResponse response = AuctionResponseParser.parse(
+                AUCTION_RESPONSE.substring(0, AUCTION_RESPONSE.length() - 1) + ",\"ttl\":120,\"price\":2.5}");
+
+        assertEquals(120, response.getTtlSeconds());
+        assertEquals(2.5, response.getPrice(), 0.0);
+    }
+
+    @Test
+    public void statusMeansNoFill() throws JSONException {
+        assertNull(AuctionResponseParser.parse("{\"status\":\"no_bid\"}"));
+    }
+
+    @Test(expected = JSONException.class)
+    public void missingFieldFails() throws JSONException {
+        AuctionResponseParser.parse("{\"advertiser_name\":\"Brand\"}");
+    }
+}
@@ -0,0 +1,27 @@
+package com.triplelift.sdk;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class AuctionUrlBuilderTest {
+
+    @Test
+    public void appendsInvCodeAndUserData() {
+        Map<String, String> userData = new LinkedHashMap<>();
+        userData.put("width", "720");
+        userData.put("height", "445");
+
+        assertEquals("http://host/auction?inv_code=inv&width=720&height=445&",
+                AuctionUrlBuilder.build("http://host/auction?", "inv", userData, false));
+    }
+
+    @Test
+    public void testFlagPrecedesInvCode() {
+        assertEquals("http://host/auction?test=true&inv_code=inv&",
+                AuctionUrlBuilder.build("http://host/auction?", "inv", new LinkedHashMap<String, String>(), true));
+    }
+}
@@ -0,0 +1,116 @@
+package com.triplelift.sdk;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BatchingWindowTest {
+
+    private static final long MAX_DEFER = 10 * 1000;
+    private static final long RADIO_TAIL = 5 * 1000;
+
+    private FakeClock clock;
+    private BatchingWindow<String> window;
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock();
+        window = new BatchingWindow<>(clock, MAX_DEFER, RADIO_TAIL);
+    }
+
+    @Test
+    public void deferredItemsWaitForTheWindow() {
+        assertEquals(Collections.<String>emptyList(), window.defer("pixel 1"));
+        clock.advance(4000);
+        assertEquals(Collections.<String>emptyList(), window.defer("pixel 2"));
+
+        assertEquals(MAX_DEFER, window.getFlushAt());
+        clock.advance(5999);
+        assertEquals(Collections.<String>emptyList(), window.poll());
+        clock.advance(1);
+        assertEquals(Arrays.asList("pixel 1", "pixel 2"), window.poll());
+        assertEquals(1, window.getWakeups());
+    }
+
+    @Test
+    public void deferredItemsRideAlongWithUrgentTraffic() {
+        window.defer("pixel");
+        window.defer("refill");
+        clock.advance(2000);
+
+        assertEquals(Arrays.asList("pixel", "refill"), window.onUrgent());
+        assertEquals(1, window.getWakeups());
+        assertEquals(Long.MAX_VALUE, window.getFlushAt());
+    }
+
+    @Test
+    public void deferringWhileTheRadioIsUpSendsRightAway() {
+        window.onUrgent();
+        clock.advance(RADIO_TAIL - 1);
+
+        assertEquals(Arrays.asList("pixel"), window.defer("pixel"));
+        // that transmission restarted the tail
+        clock.advance(RADIO_TAIL - 1);
+        assertEquals(Arrays.asList("beacon"), window.defer("beacon"));
+        assertEquals(1, window.getWakeups());
+
+        clock.advance(RADIO_TAIL);
+        assertEquals(Collections.<String>emptyList(), window.defer("late pixel"));
+    }
+
+    @Test
+    public void steadyTrafficWakesTheRadioOncePerWindow() {
+        // a pixel every 3s and an urgent auction every minute, for an hour
+        long hour = 60 * 60 * 1000;
+        for (long t = 0; t < hour; t += 1000) {
+            clock.set(t);
+            window.poll();
+            if (t % (60 * 1000) == 0) {
+                window.onUrgent();
+            } else if (t % 3000 == 0) {
+                window.defer("pixel " + t);
+            }
+        }
+
+        int unbatched = (int) (hour / 3000);
+        int bound = (int) (hour / (MAX_DEFER + RADIO_TAIL)) + (int) (hour / (60 * 1000)) + 1;
+        assertTrue(window.getWakeups() + " wakeups, bound is " + bound, window.getWakeups() <= bound);
+        assertTrue(window.getWakeups() < unbatched / 3);
+    }
+
+    @Test
+    public void nothingIsHeldLongerThanTheWindow() {
+        for (long t = 0; t < 120 * 1000; t += 700) {
+            clock.set(t);
+            List<String> sent = window.poll();
+            for (String item: sent) {
+                long deferredAt = Long.parseLong(item);
+                assertTrue("held for " + (t - deferredAt) + "ms", t - deferredAt <= MAX_DEFER + 700);
+            }
+            window.defer(Long.toString(t));
+        }
+    }
+
+    static class FakeClock implements Clock {
+        private long now;
+
+        @Override
+        public long now() {
+            return now;
+        }
+
+        void set(long now) {
+            this.now = now;
+        }
+
+        void advance(long millis) {
+            now += millis;
+        }
+    }
+}
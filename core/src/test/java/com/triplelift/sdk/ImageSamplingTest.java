@@ -0,0 +1,39 @@
+package com.triplelift.sdk;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ImageSamplingTest {
+
+    @Test
+    public void unboundedKeepsActualSize() {
+        assertEquals(1080, ImageSampling.resizedDimension(0, 0, 1080, 667, ImageSampling.FIT));
+    }
+
+    @Test
+    public void fitKeepsAspectRatioInsideBounds() {
+        // 1080x667 into 480x480
+        assertEquals(480, ImageSampling.resizedDimension(480, 480, 1080, 667, ImageSampling.FIT));
+        assertEquals(296, ImageSampling.resizedDimension(480, 480, 667, 1080, ImageSampling.FIT));
+    }
+
+    @Test
+    public void centerCropCoversBounds() {
+        assertEquals(777, ImageSampling.resizedDimension(480, 480, 1080, 667, ImageSampling.CENTER_CROP));
+        assertEquals(480, ImageSampling.resizedDimension(480, 480, 667, 1080, ImageSampling.CENTER_CROP));
+    }
+
+    @Test
+    public void fitXyStretches() {
+        assertEquals(480, ImageSampling.resizedDimension(480, 100, 1080, 667, ImageSampling.FIT_XY));
+        assertEquals(100, ImageSampling.resizedDimension(100, 480, 667, 1080, ImageSampling.FIT_XY));
+    }
+
+    @Test
+    public void sampleSizeIsLargestCoveringPowerOfTwo() {
+        assertEquals(1, ImageSampling.sampleSize(1080, 667, 720, 445));
+        assertEquals(2, ImageSampling.sampleSize(1080, 667, 480, 297));
+        assertEquals(4, ImageSampling.sampleSize(1440, 890, 320, 198));
+    }
+}
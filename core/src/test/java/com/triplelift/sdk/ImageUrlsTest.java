@@ -0,0 +1,45 @@
+package com.triplelift.sdk;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ImageUrlsTest {
+
+    @Test
+    public void replacesExistingDimensions() {
+        assertEquals("http://img.3lift.com/?width=480&height=297&url=http%3A%2F%2Fcdn%2Fa.jpg",
+                ImageUrls.sized("http://img.3lift.com/?width=1080&height=667&url=http%3A%2F%2Fcdn%2Fa.jpg", 480, 297));
+    }
+
+    @Test
+    public void appendsMissingDimensions() {
+        assertEquals("http://img.3lift.com/?url=a.jpg&width=480&height=297",
+                ImageUrls.sized("http://img.3lift.com/?url=a.jpg", 480, 297));
+        assertEquals("http://cdn/a.jpg?width=480&height=297", ImageUrls.sized("http://cdn/a.jpg", 480, 297));
+    }
+
+    @Test
+    public void leavesSimilarlyNamedParamsAlone() {
+        assertEquals("http://cdn/a.jpg?max_width=9&widthx=1&width=480",
+                ImageUrls.setQueryParam("http://cdn/a.jpg?max_width=9&widthx=1", "width", "480"));
+    }
+
+    @Test
+    public void keepsFragment() {
+        assertEquals("http://cdn/a.jpg?width=480#top", ImageUrls.setQueryParam("http://cdn/a.jpg#top", "width", "480"));
+    }
+
+    @Test
+    public void usesBucketDimensions() {
+        assertEquals("http://cdn/a.jpg?width=480&height=297",
+                ImageUrls.sized("http://cdn/a.jpg", AdSizeBucket.forSize(360, 222)));
+    }
+
+    @Test
+    public void forceHttpOnlyTouchesScheme() {
+        assertEquals("http://img.3lift.com/?url=https%3A%2F%2Fcdn",
+                ImageUrls.forceHttp("https://img.3lift.com/?url=https%3A%2F%2Fcdn"));
+        assertEquals("http://cdn/a.jpg", ImageUrls.forceHttp("http://cdn/a.jpg"));
+    }
+}
@@ -0,0 +1,31 @@
+package com.triplelift.sdk;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class InternedUrlsTest {
+
+    @Test
+    public void flattenedUrlsRoundTrip() {
+        String[] flat = InternedUrls.flatten(Arrays.asList("http://eb2.3lift.com/mbi?id=1&b=2",
+                "http://eb2.3lift.com/mbi", "http://eb2.3lift.com/mbi?"));
+
+        assertEquals(6, flat.length);
+        assertEquals("http://eb2.3lift.com/mbi?id=1&b=2", InternedUrls.get(flat, 0));
+        assertEquals("http://eb2.3lift.com/mbi", InternedUrls.get(flat, 1));
+        assertEquals("http://eb2.3lift.com/mbi?", InternedUrls.get(flat, 2));
+    }
+
+    @Test
+    public void prefixesAreSharedBetweenAds() {
+        String[] first = InternedUrls.flatten(Arrays.asList(new String("http://eb2.3lift.com/mbi?id=1")));
+        String[] second = InternedUrls.flatten(Arrays.asList(new String("http://eb2.3lift.com/mbi?id=2")));
+
+        assertSame(first[0], second[0]);
+        assertEquals("id=2", second[1]);
+    }
+}
@@ -0,0 +1,55 @@
+package com.triplelift.sdk;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class NativeAdConfigTest {
+
+    @Test
+    public void jsonOverridesOnlyTheKeysItHas() throws JSONException {
+        NativeAdConfig config = NativeAdConfig.fromJson(new JSONObject(
+                "{\"request_timeout_ms\":2500,\"retry_delays_ms\":[500,2000],\"placement_capacity\":200,"
+                        + "\"stale_grace_ms\":30000}"));
+
+        assertEquals(2500, config.getRequestTimeoutMillis());
+        assertArrayEquals(new int[]{500, 2000}, config.getRetryDelaysMillis());
+        assertEquals(200, config.getPlacementCapacity());
+        assertEquals(30000, config.getStaleGraceMillis());
+        assertEquals(NativeAdConfig.DEFAULT.getMaxPoolDepth(), config.getMaxPoolDepth());
+        assertEquals(NativeAdConfig.DEFAULT.getDefaultAdTtlMillis(), config.getDefaultAdTtlMillis());
+    }
+
+    @Test
+    public void buildUponKeepsTheBase() {
+        NativeAdConfig base = new NativeAdConfig.Builder().setMaxPoolDepth(8).build();
+        NativeAdConfig unit = base.buildUpon().setFanOutDeadlineMillis(400).build();
+
+        assertEquals(8, unit.getMaxPoolDepth());
+        assertEquals(400, unit.getFanOutDeadlineMillis());
+        assertEquals(NativeAdConfig.DEFAULT.getFanOutDeadlineMillis(), base.getFanOutDeadlineMillis());
+    }
+
+    @Test
+    public void isNotChangedThroughItsArrays() {
+        int[] delays = new int[]{100, 200};
+        NativeAdConfig config = new NativeAdConfig.Builder().setRetryDelaysMillis(delays).build();
+        delays[0] = 0;
+        config.getRetryDelaysMillis()[1] = 0;
+
+        assertArrayEquals(new int[]{100, 200}, config.getRetryDelaysMillis());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPoolDepthBelowPoolSize() {
+        new NativeAdConfig.Builder().setMinPoolSize(3).setMaxPoolDepth(2).build();
+    }
+
+    @Test
+    public void staleGraceIsOffByDefault() {
+        assertEquals(0, NativeAdConfig.DEFAULT.getStaleGraceMillis());
+    }
+}
@@ -0,0 +1,192 @@
+package com.triplelift.sdk;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NativeFeedPlacementTest {
+
+    private NativeFeedPlacement<String> placement;
+
+    @Before
+    public void setUp() {
+        placement = new NativeFeedPlacement<>(new NativeFeedPositions(new int[] {3}, 5));
+    }
+
+    @Test
+    public void adPositionsFollowInitialPositionAndInterval() {
+        assertTrue(placement.isAdPosition(3));
+        assertTrue(placement.isAdPosition(7));
+        assertTrue(placement.isAdPosition(11));
+        assertFalse(placement.isAdPosition(4));
+        assertFalse(placement.isAdPositionLive(3));
+    }
+
+    @Test
+    public void placedAdIsServedAtItsPosition() {
+        placement.placeNativeAd("ad", 3);
+
+        assertTrue(placement.isAdPositionLive(3));
+        assertEquals("ad", placement.getNativeAd(3));
+        assertEquals(1, placement.adsLive());
+    }
+
+    @Test
+    public void placingAnAdShiftsLaterSlots() {
+        placement.placeNativeAd("first", 3);
+
+        assertFalse(placement.isAdPosition(7));
+        assertTrue(placement.isAdPosition(8));
+
+        placement.placeNativeAd("second", 8);
+        assertTrue(placement.isAdPosition(13));
+        assertSame("second", placement.getNativeAd(8));
+    }
+
+    @Test
+    public void placingTwiceKeepsTheFirstAd() {
+        placement.placeNativeAd("first", 3);
+        placement.placeNativeAd("second", 3);
+
+        assertEquals("first", placement.getNativeAd(3));
+        assertEquals(1, placement.adsLive());
+    }
+
+    @Test
+    public void placingOutsideASlotIsIgnored() {
+        placement.placeNativeAd("ad", 4);
+
+        assertNull(placement.getNativeAd(4));
+        assertEquals(0, placement.adsLive());
+    }
+
+    @Test
+    public void contentPositionSkipsLiveAds() {
+        placement.placeNativeAd("first", 3);
+        placement.placeNativeAd("second", 8);
+
+        assertEquals(2, placement.getContentPosition(2));
+        assertEquals(3, placement.getContentPosition(4));
+        assertEquals(6, placement.getContentPosition(7));
+        assertEquals(7, placement.getContentPosition(9));
+    }
+
+    @Test
+    public void contentPositionIgnoresSlotsThatAreNotLive() {
+        placement.placeNativeAd("second", 7);
+
+        assertEquals(3, placement.getContentPosition(3));
+        assertEquals(6, placement.getContentPosition(6));
+        assertEquals(7, placement.getContentPosition(8));
+    }
+
+    @Test
+    public void capacityBoundsTheNumberOfSlots() {
+        NativeFeedPlacement<String> small = new NativeFeedPlacement<>(new NativeFeedPositions(null, 4), 2);
+
+        assertTrue(small.isAdPosition(3));
+        assertTrue(small.isAdPosition(6));
+        assertFalse(small.isAdPosition(9));
+    }
+
+    @Test
+    public void emptySlotsBetweenCountsOnlyOpenSlotsInRange() {
+        assertEquals(3, placement.emptySlotsBetween(0, 12));
+        assertEquals(2, placement.emptySlotsBetween(4, 12));
+        assertEquals(0, placement.emptySlotsBetween(12, 12));
+
+        placement.placeNativeAd("first", 3);
+
+        assertEquals(2, placement.emptySlotsBetween(0, 13));
+        assertEquals(1, placement.emptySlotsBetween(4, 12));
+    }
+
+    @Test
+    public void insertedContentMovesOnlyLaterSlots() {
+        placement.placeNativeAd("first", 3);
+        placement.placeNativeAd("second", 8);
+
+        // two rows inserted between the ads
+        placement.insertContent(5, 2);
+
+        assertEquals("first", placement.getNativeAd(3));
+        assertNull(placement.getNativeAd(8));
+        assertEquals("second", placement.getNativeAd(10));
+        assertEquals(9, placement.getContentPosition(11));
+        assertEquals(2, placement.adsLive());
+    }
+
+    @Test
+    public void contentInsertedAtTheTopMovesEveryAd() {
+        placement.placeNativeAd("first", 3);
+
+        placement.insertContent(0, 4);
+
+        assertFalse(placement.isAdPositionLive(3));
+        assertEquals("first", placement.getNativeAd(7));
+        assertEquals(0, placement.getContentPosition(0));
+        assertEquals(7, placement.getContentPosition(8));
+    }
+
+    @Test
+    public void removedContentTakesEnclosedAdsWithIt() {
+        placement.placeNativeAd("first", 3);
+        placement.placeNativeAd("second", 8);
+        placement.placeNativeAd("third", 13);
+
+        // rows 5 to 8 are gone, the second ad had content removed on both sides
+        assertEquals(1, placement.removeContent(5, 4));
+
+        assertEquals("first", placement.getNativeAd(3));
+        assertEquals("third", placement.getNativeAd(8));
+        assertEquals(2, placement.adsLive());
+        assertEquals(7, placement.getContentPosition(9));
+    }
+
+    @Test
+    public void removalDoesNotStackAdsAndRefillsSlotsAtTheEnd() {
+        NativeFeedPlacement<String> small = new NativeFeedPlacement<>(new NativeFeedPositions(new int[] {3}, 5), 3);
+        small.placeNativeAd("first", 3);
+        small.placeNativeAd("second", 8);
+
+        // every row between the ads, the second would land right under the first
+        assertEquals(1, small.removeContent(3, 4));
+
+        assertEquals("first", small.getNativeAd(3));
+        assertFalse(small.isAdPosition(4));
+        assertEquals(1, small.adsLive());
+        // the freed slots repeat the interval after the last one left
+        assertTrue(small.isAdPosition(8));
+        assertTrue(small.isAdPosition(12));
+    }
+
+    @Test
+    public void restoredPlacementKeepsAdsAtTheirPositions() {
+        placement.placeNativeAd("first", 3);
+        placement.placeNativeAd("second", 8);
+        placement.insertContent(5, 2);
+
+        NativeFeedPlacement<String> restored = new NativeFeedPlacement<>(new NativeFeedPositions(new int[] {3}, 5));
+        assertTrue(restored.restoreState(placement.saveState()));
+
+        assertEquals(2, restored.adsLive());
+        assertEquals("first", restored.getNativeAd(3));
+        assertEquals("second", restored.getNativeAd(10));
+        assertFalse(restored.isAdPositionLive(15));
+        assertEquals(placement.getContentPosition(14), restored.getContentPosition(14));
+    }
+
+    @Test
+    public void stateOfAnotherCapacityIsRefused() {
+        placement.placeNativeAd("first", 3);
+        NativeFeedPlacement<String> small = new NativeFeedPlacement<>(new NativeFeedPositions(new int[] {3}, 5), 3);
+
+        assertFalse(small.restoreState(placement.saveState()));
+        assertEquals(0, small.adsLive());
+    }
+}
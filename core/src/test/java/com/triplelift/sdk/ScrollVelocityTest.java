@@ -0,0 +1,56 @@
+package com.triplelift.sdk;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ScrollVelocityTest {
+
+    private ScrollVelocity velocity;
+
+    @Before
+    public void setUp() {
+        velocity = new ScrollVelocity();
+    }
+
+    @Test
+    public void steadyScrollConvergesOnItsSpeed() {
+        for (int frame = 0; frame < 30; frame++) {
+            velocity.onPositionVisible(frame * 2, frame * 100);
+        }
+
+        assertEquals(20.0, velocity.getRowsPerSecond(2900), 0.5);
+        assertEquals(20, velocity.rowsWithin(1000, 2900));
+    }
+
+    @Test
+    public void scrollingBackIsNegative() {
+        for (int frame = 0; frame < 30; frame++) {
+            velocity.onPositionVisible(100 - frame, frame * 50);
+        }
+
+        assertTrue(velocity.getRowsPerSecond(1450) < 0);
+    }
+
+    @Test
+    public void samplesInTheSameFrameAreMeasuredAcrossTheNextOne() {
+        velocity.onPositionVisible(0, 0);
+        velocity.onPositionVisible(5, 0);
+        velocity.onPositionVisible(10, 100);
+
+        assertEquals(40.0, velocity.getRowsPerSecond(100), 0.001);
+    }
+
+    @Test
+    public void idleListHasNoSpeed() {
+        velocity.onPositionVisible(0, 0);
+        velocity.onPositionVisible(10, 100);
+
+        assertEquals(0.0, velocity.getRowsPerSecond(100 + ScrollVelocity.IDLE_MILLIS + 1), 0.0);
+
+        velocity.onPositionVisible(11, 2000);
+        assertEquals(0.0, velocity.getRowsPerSecond(2000), 0.0);
+    }
+}
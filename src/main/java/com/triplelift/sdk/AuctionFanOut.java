@@ -0,0 +1,190 @@
+package com.triplelift.sdk;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.ParseError;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One auction sent to every endpoint at once. The highest priced fill that arrives before the
+ * deadline wins, the requests still outstanding then are cancelled. With a single endpoint and no
+ * deadline this is a plain auction request. Lives on the main thread, like Volley's callbacks.
+ */
+class AuctionFanOut {
+
+    interface Listener {
+        /** endpointLatencyMillis is how fast the winner answered, latencyMillis when the fan-out settled */
+        void onFill(AuctionResponse auctionResponse, String endpoint, long endpointLatencyMillis, long latencyMillis);
+        void onNoFill(JSONObject response, long latencyMillis);
+        void onError(VolleyError error, long latencyMillis);
+    }
+
+    private final Handler handler;
+    private final NativeAdMetricsListener metrics;
+    private final Listener listener;
+    private final List<Request<?>> requests;
+    private long start;
+    private Runnable deadlineRunnable;
+    private int pending;
+    private boolean finished = false;
+
+    private AuctionResponse best;
+    private String bestEndpoint;
+    private long bestLatency;
+    private JSONObject noFill;
+    private VolleyError lastError;
+
+    AuctionFanOut(Handler handler, NativeAdMetricsListener metrics, Listener listener) {
+        this.handler = handler;
+        this.metrics = metrics;
+        this.listener = listener;
+        this.requests = new ArrayList<>();
+    }
+
+    /**
+     * Sends the auction to every endpoint, urls[i] being the auction URL built for endpoints[i].
+     * A deadline of 0 or less waits for every endpoint, up to its request timeout. A deferrable
+     * auction without a deadline may be held back to share a radio wakeup, see NetworkScheduler.
+     */
+    void start(final Controller controller, String invCode, List<String> endpoints, List<String> urls,
+               int timeoutMillis, final long deadlineMillis, final String tag, boolean deferrable) {
+        pending = endpoints.size();
+        for (int i = 0; i < endpoints.size(); i++) {
+            Request<?> request = newRequest(invCode, endpoints.get(i), urls.get(i),
+                    controller.getAuctionResponseCodecs());
+            request.setRetryPolicy(new DefaultRetryPolicy(timeoutMillis, 0, DefaultRetryPolicy.DEFAULT_BACKOFF_MULT));
+            requests.add(request);
+        }
+
+        Runnable send = new Runnable() {
+            @Override
+            public void run() {
+                if (finished) {
+                    return;
+                }
+                // latency counts from the moment the auction actually goes out
+                start = SystemClock.elapsedRealtime();
+                if (deadlineMillis > 0) {
+                    deadlineRunnable = new Runnable() {
+                        @Override
+                        public void run() {
+                            finish();
+                        }
+                    };
+                    handler.postDelayed(deadlineRunnable, deadlineMillis);
+                }
+                for (Request<?> request: requests) {
+                    controller.addToRequestQueue(request, tag);
+                }
+            }
+        };
+        if (deferrable && deadlineMillis <= 0) {
+            controller.getScheduler().defer(send);
+        } else {
+            controller.getScheduler().sendNow(send);
+        }
+    }
+
+    void cancel() {
+        finished = true;
+        cancelOutstanding();
+    }
+
+    private Request<?> newRequest(final String invCode, final String endpoint, String url,
+                                  List<AuctionResponseCodec> codecs) {
+        final AuctionRequest[] request = new AuctionRequest[1];
+        request[0] = new AuctionRequest(url, codecs,
+                new Response.Listener<AuctionAnswer>() {
+                    @Override
+                    public void onResponse(AuctionAnswer answer) {
+                        if (finished) {
+                            return;
+                        }
+                        metrics.onParse(request[0].getParseNanos());
+                        onAnswer(endpoint, answer);
+                        answered();
+                    }
+                }, new Response.ErrorListener() {
+            @Override
+            public void onErrorResponse(VolleyError error) {
+                if (finished) {
+                    return;
+                }
+                if (error instanceof ParseError) {
+                    NativeAdEventLog.record(NativeAdEventLog.ERROR, NativeAdEventLog.ERROR_PARSE, invCode.hashCode());
+                }
+                lastError = error;
+                answered();
+            }
+        });
+        return request[0];
+    }
+
+    private void onAnswer(String endpoint, AuctionAnswer answer) {
+        AuctionResponse auctionResponse = answer.getResponse();
+        if (auctionResponse == null) {
+            noFill = noFillResponse(answer.getStatus());
+        } else if (best == null || auctionResponse.getPrice() > best.getPrice()) {
+            best = auctionResponse;
+            bestEndpoint = endpoint;
+            bestLatency = SystemClock.elapsedRealtime() - start;
+        }
+    }
+
+    // the callbacks still see the exchange's JSON status object, whatever the wire format was
+    private static JSONObject noFillResponse(String status) {
+        JSONObject response = new JSONObject();
+        try {
+            response.put("status", status);
+        } catch (JSONException e) {
+            throw new AssertionError(e);
+        }
+        return response;
+    }
+
+    private void answered() {
+        pending--;
+        if (pending == 0) {
+            finish();
+        }
+    }
+
+    private void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        cancelOutstanding();
+
+        long latency = SystemClock.elapsedRealtime() - start;
+        if (best != null) {
+            listener.onFill(best, bestEndpoint, bestLatency, latency);
+        } else if (noFill != null) {
+            listener.onNoFill(noFill, latency);
+        } else if (lastError != null && pending == 0) {
+            listener.onError(lastError, latency);
+        } else {
+            listener.onError(new TimeoutError(), latency);
+        }
+    }
+
+    private void cancelOutstanding() {
+        if (deadlineRunnable != null) {
+            handler.removeCallbacks(deadlineRunnable);
+        }
+        for (Request<?> request: requests) {
+            request.cancel();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.triplelift.sdk;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.toolbox.HttpHeaderParser;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One auction call. Offers every codec in the Accept header and decodes the answer on the network
+ * thread with the codec the exchange picked, so the main thread only gets the parsed ad.
+ */
+class AuctionRequest extends Request<AuctionAnswer> {
+
+    private final List<AuctionResponseCodec> codecs;
+    private final Map<String, String> headers;
+    private final Response.Listener<AuctionAnswer> listener;
+    // measured on the network thread, read once the answer is delivered
+    private volatile long parseNanos;
+
+    AuctionRequest(String url, List<AuctionResponseCodec> codecs, Response.Listener<AuctionAnswer> listener,
+                   Response.ErrorListener errorListener) {
+        super(Method.GET, url, errorListener);
+        this.codecs = codecs;
+        this.headers = Collections.singletonMap("Accept", AuctionResponseCodecs.accept(codecs));
+        this.listener = listener;
+        // answers are per auction, never replay one from the cache
+        setShouldCache(false);
+    }
+
+    long getParseNanos() {
+        return parseNanos;
+    }
+
+    @Override
+    public Map<String, String> getHeaders() throws AuthFailureError {
+        return headers;
+    }
+
+    @Override
+    protected Response<AuctionAnswer> parseNetworkResponse(NetworkResponse response) {
+        long start = System.nanoTime();
+        AuctionResponseCodec codec = AuctionResponseCodecs.forContentType(codecs,
+                response.headers != null ? response.headers.get("Content-Type") : null);
+        try {
+            AuctionAnswer answer = codec.decode(response.data, HttpHeaderParser.parseCharset(response.headers, "UTF-8"));
+            parseNanos = System.nanoTime() - start;
+            return Response.success(answer, null);
+        } catch (IOException e) {
+            return Response.error(new ParseError(e));
+        }
+    }
+
+    @Override
+    protected void deliverResponse(AuctionAnswer answer) {
+        listener.onResponse(answer);
+    }
+}
@@ -1,29 +1,88 @@
 package com.triplelift.sdk;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
 import android.text.TextUtils;
 
+import com.android.volley.DefaultRetryPolicy;
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
 import com.android.volley.toolbox.ImageLoader;
 import com.android.volley.toolbox.Volley;
 
-/** Instantiate with the application context, not the activity context */
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Instantiate with the application context, not the activity context. Call init from
+ * Application.onCreate so the SDK is built and warmed up off the main thread before the first ad.
+ */
 public class Controller {
 
     public static final String TAG = Controller.class.getSimpleName();
+    private static final int PIXEL_TIMEOUT = 20 * 1000;
+    // states saved by hosts that were never recreated are dropped oldest first
+    private static final int MAX_RETAINED_STATES = 4;
+    /** Raw resource the app may bundle with its NativeAdConfig, as JSON */
+    public static final String CONFIG_RESOURCE = "triplelift_config";
 
     private static Controller mInstance;
     private static Context mCtx;
+    private static boolean mInitStarted = false;
+    private static NativeAdConfig mInitConfig;
+    private final NativeAdConfig mConfig;
+    private final Handler mBackgroundHandler;
+    private volatile String mIpAddress;
     private RequestQueue mRequestQueue;
-    private ImageLoader mImageLoader;
+    private NativeAdImageLoader mImageLoader;
+    private final NativeAdMetrics mMetrics = new NativeAdMetrics();
+    private final NativeAdClickthrough mClickthrough;
+    private final NetworkScheduler mScheduler;
+    private volatile List<AuctionResponseCodec> mAuctionCodecs = Collections.unmodifiableList(
+            Arrays.asList(AuctionResponseCodecs.BINARY, AuctionResponseCodecs.JSON));
+    // main thread only, saved in onSaveInstanceState and taken back in onCreate
+    private final Map<String, Object> mRetainedStates = new LinkedHashMap<String, Object>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+            return size() > MAX_RETAINED_STATES;
+        }
+    };
     LruBitmapCache mLruBitMapCache;
 
     private Controller(Context context) {
-        mCtx = context;
+        // Never retain the caller's context, it is usually an activity
+        mCtx = context.getApplicationContext();
+        mConfig = mInitConfig != null ? mInitConfig : readBundledConfig(mCtx);
         mRequestQueue = getRequestQueue();
-        mImageLoader = new ImageLoader(mRequestQueue,
-                new LruBitmapCache());
+        mImageLoader = new NativeAdImageLoader(mRequestQueue,
+                getLruBitmapCache(), mMetrics);
+
+        HandlerThread backgroundThread = new HandlerThread("TripleLiftBackground", Process.THREAD_PRIORITY_BACKGROUND);
+        backgroundThread.start();
+        mBackgroundHandler = new Handler(backgroundThread.getLooper());
+        mClickthrough = new NativeAdClickthrough(mCtx, mBackgroundHandler);
+        mScheduler = new NetworkScheduler(mCtx);
+        mBackgroundHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                warmUp();
+            }
+        });
     }
 
     public static synchronized Controller getInstance(Context context) {
@@ -33,6 +92,115 @@ public class Controller {
         return mInstance;
     }
 
+    /**
+     * Builds the request queue, caches and image loader on a background thread and warms up the
+     * connection to the auction host, returns straight away. Without it all of that happens on
+     * whichever thread first needs the SDK, usually the main thread during the first ad bind.
+     */
+    public static void init(Context context) {
+        init(context, null);
+    }
+
+    /**
+     * Like init(Context), with the configuration every ad unit starts from. A null config reads
+     * the app's res/raw/triplelift_config.json, or uses the defaults when there is none. Has no
+     * effect once the SDK is built.
+     */
+    public static void init(Context context, NativeAdConfig config) {
+        final Context appContext = context.getApplicationContext();
+        synchronized (Controller.class) {
+            if (mInstance != null || mInitStarted) {
+                return;
+            }
+            mInitStarted = true;
+            mInitConfig = config;
+        }
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                getInstance(appContext);
+            }
+        }, "TripleLiftInit").start();
+    }
+
+    public static synchronized boolean isInitialized() {
+        return mInstance != null;
+    }
+
+    private static NativeAdConfig readBundledConfig(Context context) {
+        int id = context.getResources().getIdentifier(CONFIG_RESOURCE, "raw", context.getPackageName());
+        if (id == 0) {
+            return NativeAdConfig.DEFAULT;
+        }
+        InputStream in = context.getResources().openRawResource(id);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return NativeAdConfig.fromJson(new JSONObject(out.toString("UTF-8")));
+        } catch (IOException e) {
+            return NativeAdConfig.DEFAULT;
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("malformed " + CONFIG_RESOURCE, e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // nothing left to read
+            }
+        }
+    }
+
+    /** The SDK-wide configuration, ad units may override it */
+    public NativeAdConfig getConfig() {
+        return mConfig;
+    }
+
+    // runs on the background thread once the controller exists
+    private void warmUp() {
+        try {
+            // enumerating interfaces reads from /sys, keep it off the main thread
+            mIpAddress = Utils.getIpAddress();
+        } catch (IOException e) {
+            // auctions go out without it
+        }
+        preconnect(AuctionUrlBuilder.BASE_URL);
+    }
+
+    /**
+     * Opens a keep-alive connection to the host of the given URL. Volley's HurlStack shares
+     * HttpURLConnection's connection pool, so the first auction skips DNS and the TCP handshake.
+     */
+    void preconnect(final String url) {
+        mBackgroundHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    URL origin = new URL(url);
+                    HttpURLConnection connection = (HttpURLConnection) new URL(origin.getProtocol(), origin.getHost(),
+                            origin.getPort(), "/").openConnection();
+                    connection.setRequestMethod("HEAD");
+                    connection.setConnectTimeout(mConfig.getRequestTimeoutMillis());
+                    connection.setReadTimeout(mConfig.getRequestTimeoutMillis());
+                    connection.getResponseCode();
+                    // closing a fully read response, rather than disconnecting, hands the socket back to the pool
+                    connection.getInputStream().close();
+                } catch (IOException e) {
+                    // the first auction connects itself
+                }
+            }
+        });
+    }
+
+    /** Device IP, null until the background warm-up has looked it up */
+    String getIpAddress() {
+        return mIpAddress;
+    }
+
     public RequestQueue getRequestQueue() {
         if (mRequestQueue == null) {
             mRequestQueue = Volley.newRequestQueue(mCtx.getApplicationContext());
@@ -40,22 +208,80 @@ public class Controller {
         return mRequestQueue;
     }
 
+    /** Swaps the transport every ad unit goes through, tests run the SDK on a simulated network this way */
+    void setRequestQueue(RequestQueue requestQueue) {
+        mRequestQueue = requestQueue;
+        mImageLoader = new NativeAdImageLoader(requestQueue, getLruBitmapCache(), mMetrics);
+    }
+
     public ImageLoader getImageLoader() {
         getRequestQueue();
         if (mImageLoader == null) {
             getLruBitmapCache();
-            mImageLoader = new ImageLoader(this.mRequestQueue, mLruBitMapCache);
+            mImageLoader = new NativeAdImageLoader(this.mRequestQueue, mLruBitMapCache, mMetrics);
         }
         return this.mImageLoader;
     }
 
     public LruBitmapCache getLruBitmapCache() {
         if (mLruBitMapCache == null) {
-            mLruBitMapCache = new LruBitmapCache();
+            mLruBitMapCache = new LruBitmapCache(
+                    LruBitmapCache.getLruCacheSize(mConfig.getImageCacheHeapFraction()));
         }
         return this.mLruBitMapCache;
     }
 
+    /** Creatives are requested as WebP where the platform can decode it, on by default */
+    public void setWebpEnabled(boolean webpEnabled) {
+        ((NativeAdImageLoader) getImageLoader()).setWebpEnabled(webpEnabled);
+    }
+
+    /**
+     * Opens clickthroughs in NativeAdLandingActivity instead of the browser, off by default.
+     * With prefetch on, landing documents are fetched while their ad is on screen.
+     */
+    public void setInAppLandingPages(boolean inApp, boolean prefetch) {
+        mClickthrough.setInAppLandingPages(inApp);
+        mClickthrough.setPrefetchLandingPages(prefetch);
+    }
+
+    /**
+     * On cellular, holds back tracking pixels and background refills for up to 10 seconds so they
+     * go out together or with the next auction, instead of each waking the radio. Off by default.
+     */
+    public void setNetworkBatching(boolean enabled) {
+        mScheduler.setEnabled(enabled);
+    }
+
+    /**
+     * Wire formats offered to exchanges, most preferred first. The binary codec by default, with
+     * JSON for exchanges that do not speak it.
+     */
+    public void setAuctionResponseCodecs(List<AuctionResponseCodec> codecs) {
+        mAuctionCodecs = Collections.unmodifiableList(new ArrayList<>(codecs));
+    }
+
+    List<AuctionResponseCodec> getAuctionResponseCodecs() {
+        return mAuctionCodecs;
+    }
+
+    NetworkScheduler getScheduler() {
+        return mScheduler;
+    }
+
+    NativeAdClickthrough getClickthrough() {
+        return mClickthrough;
+    }
+
+    public NativeAdMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /** Receives pipeline events in addition to the built-in collector */
+    public void setMetricsListener(NativeAdMetricsListener listener) {
+        mMetrics.setListener(listener);
+    }
+
     public <T> void addToRequestQueue(Request<T> req, String tag) {
         req.setTag(TextUtils.isEmpty(tag) ? TAG: tag);
         getRequestQueue().add(req);
@@ -66,6 +292,58 @@ public class Controller {
         getRequestQueue().add(req);
     }
 
+    /**
+     * Fire and forget, pixels are retried once and never cancelled with an ad unit's requests.
+     * The response is neither decoded nor cached.
+     */
+    void firePixel(String url) {
+        FetchRequest request = new FetchRequest(url, Request.Priority.NORMAL);
+        request.setShouldCache(false);
+        request.setRetryPolicy(new DefaultRetryPolicy(PIXEL_TIMEOUT, 1, DefaultRetryPolicy.DEFAULT_BACKOFF_MULT));
+        deferRequest(request, TAG);
+    }
+
+    /** Warms the HTTP cache with a creative, behind every other request and with the next batch */
+    void prefetchImage(String url) {
+        if (TextUtils.isEmpty(url)) {
+            return;
+        }
+        Request<Void> request = ((NativeAdImageLoader) getImageLoader()).newPrefetchRequest(url);
+        if (request != null) {
+            deferRequest(request, TAG);
+        }
+    }
+
+    /** The ad's creative URL sized for the slot, see NativeAdImageLoader */
+    String sizedImageUrl(NativeAd nativeAd, AdSizeBucket slotBucket) {
+        return ((NativeAdImageLoader) getImageLoader()).sizedImageUrl(nativeAd.getImageUrl(), slotBucket);
+    }
+
+    /** Queues the request with the next batch of deferrable traffic, see setNetworkBatching */
+    <T> void deferRequest(final Request<T> req, final String tag) {
+        mScheduler.defer(new Runnable() {
+            @Override
+            public void run() {
+                addToRequestQueue(req, tag);
+            }
+        });
+    }
+
+    /**
+     * Keeps an ad unit's state across the recreation of its host, returns the key to take it back
+     * with. Random so a key saved before the process died never finds another unit's state.
+     */
+    String retainState(Object state) {
+        String key = UUID.randomUUID().toString();
+        mRetainedStates.put(key, state);
+        return key;
+    }
+
+    /** The state retained under the key, once, null when it is gone */
+    Object takeRetainedState(String key) {
+        return key != null ? mRetainedStates.remove(key) : null;
+    }
+
     public void cancelPendingRequests(Object tag) {
         if (mRequestQueue != null) {
             mRequestQueue.cancelAll(tag);
@@ -0,0 +1,55 @@
+package com.triplelift.sdk;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.toolbox.HttpHeaderParser;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A GET whose body is never parsed. Tracking pixels only need to reach the server, prefetched
+ * creatives only need to land in the HTTP cache, neither is worth a decode.
+ */
+class FetchRequest extends Request<Void> {
+
+    // raised when a bind asks for a creative still being prefetched
+    private volatile Priority priority;
+    private final Map<String, String> headers;
+
+    FetchRequest(String url, Priority priority) {
+        this(url, priority, Collections.<String, String>emptyMap());
+    }
+
+    FetchRequest(String url, Priority priority, Map<String, String> headers) {
+        super(Method.GET, url, null);
+        this.priority = priority;
+        this.headers = headers;
+    }
+
+    @Override
+    protected Response<Void> parseNetworkResponse(NetworkResponse response) {
+        return Response.success(null, shouldCache() ? HttpHeaderParser.parseCacheHeaders(response) : null);
+    }
+
+    @Override
+    protected void deliverResponse(Void response) {
+    }
+
+    @Override
+    public Map<String, String> getHeaders() throws AuthFailureError {
+        return headers;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /** Volley reads it as the request enters a queue, so it helps most while the request is deferred */
+    void setPriority(Priority priority) {
+        this.priority = priority;
+    }
+}
@@ -0,0 +1,123 @@
+package com.triplelift.sdk;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Fixed-bucket histogram, recording never allocates */
+public class LatencyHistogram {
+
+    static final long[] MILLIS_BOUNDS = new long[]{5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+    static final long[] MICROS_BOUNDS = new long[]{10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 25000};
+
+    private final long[] bounds;
+    private final AtomicLongArray counts;
+    private final AtomicLong recorded = new AtomicLong();
+    // the last percentile read, good until the next value is recorded
+    private volatile CachedPercentile cached;
+
+    public LatencyHistogram(long[] bounds) {
+        this.bounds = bounds;
+        // the last bucket catches everything above the highest bound
+        this.counts = new AtomicLongArray(bounds.length + 1);
+    }
+
+    public void record(long value) {
+        int i = 0;
+        while (i < bounds.length && value > bounds[i]) {
+            i++;
+        }
+        counts.incrementAndGet(i);
+        recorded.incrementAndGet();
+    }
+
+    /** As snapshot().percentile(), without the copy and only worked out again once a value was recorded */
+    public long percentile(double percentile) {
+        long count = recorded.get();
+        CachedPercentile last = cached;
+        if (last != null && last.recorded == count && last.percentile == percentile) {
+            return last.value;
+        }
+        long value = snapshot().percentile(percentile);
+        cached = new CachedPercentile(percentile, count, value);
+        return value;
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[counts.length()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(bounds, copy);
+    }
+
+    void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        recorded.set(0);
+        cached = null;
+    }
+
+    private static final class CachedPercentile {
+        final double percentile;
+        final long recorded;
+        final long value;
+
+        CachedPercentile(double percentile, long recorded, long value) {
+            this.percentile = percentile;
+            this.recorded = recorded;
+            this.value = value;
+        }
+    }
+
+    public static class Snapshot {
+        private final long[] bounds;
+        private final long[] counts;
+        private final long total;
+
+        Snapshot(long[] bounds, long[] counts) {
+            this.bounds = bounds;
+            this.counts = counts;
+            long total = 0;
+            for (long count: counts) {
+                total += count;
+            }
+            this.total = total;
+        }
+
+        public long[] getBounds() {
+            return Arrays.copyOf(bounds, bounds.length);
+        }
+
+        public long[] getCounts() {
+            return Arrays.copyOf(counts, counts.length);
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        /** Upper bound of the bucket holding the given percentile, Long.MAX_VALUE for the overflow bucket */
+        public long percentile(double percentile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return i < bounds.length ? bounds[i] : Long.MAX_VALUE;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + total + " p50<=" + percentile(50) + " p90<=" + percentile(90)
+                    + " p99<=" + percentile(99);
+        }
+    }
+}
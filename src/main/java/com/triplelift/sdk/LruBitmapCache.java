@@ -7,9 +7,13 @@ import com.android.volley.toolbox.ImageLoader.ImageCache;
 
 public class LruBitmapCache extends LruCache<String, Bitmap> implements ImageCache {
     public static int getDefaultLruCacheSize() {
+        return getLruCacheSize(NativeAdConfig.DEFAULT.getImageCacheHeapFraction());
+    }
+
+    /** In kilobytes, the given share of the heap */
+    public static int getLruCacheSize(float heapFraction) {
         final int maxMemory = (int) (Runtime.getRuntime().maxMemory() / 1024);
-        final int cacheSize = maxMemory / 8;
-        return cacheSize;
+        return (int) (maxMemory * heapFraction);
     }
 
     public LruBitmapCache() {
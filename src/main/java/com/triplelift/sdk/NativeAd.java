@@ -1,82 +1,98 @@
 package com.triplelift.sdk;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-
-import com.android.volley.DefaultRetryPolicy;
-import com.android.volley.Response;
-import com.android.volley.VolleyError;
-import com.android.volley.toolbox.ImageRequest;
 
+import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * An auctioned ad. Holds no Context, so pooled ads never keep an activity alive, and keeps its
+ * tracking pixels as flattened prefix and query pairs whose prefixes are shared between ads.
+ */
 public class NativeAd {
-    private boolean impressionFired = false, clickFired = false;
-    private final Context context;
-    private final List<String> impressionPixels, clickPixels;
+    /** Format of ads the exchange sent without one, shown in the layout registered without a format */
+    public static final String DEFAULT_FORMAT = "default";
+
     private final String brandName, clickthroughUrl, imageUrl, caption, header, logoUrl;
+    private final String format;
+    // impression pixels first, then click pixels
+    private final String[] pixels;
+    private final int impressionPixelCount;
+    private final AdSizeBucket sizeBucket;
     private final long created;
-
-    public long getCreated() {
-        return created;
+    private final long expiresAt;
+    // set once the pixels are sent, the only state changing after creation
+    private volatile boolean impressionFired = false, clickFired = false;
+
+    public NativeAd(String brandName, String clickthroughUrl, String imageUrl, String caption, String header,
+                    String logoUrl, List<String> impressionPixels, List<String> clickPixels, long ttlMillis,
+                    AdSizeBucket sizeBucket) {
+        this(brandName, clickthroughUrl, imageUrl, caption, header, logoUrl, impressionPixels, clickPixels, ttlMillis,
+                sizeBucket, null);
     }
 
-    public NativeAd(Context context, String brandName, String clickthroughUrl, String imageUrl, String caption,
-                    String header, String logoUrl, List<String> impressionPixels, List<String> clickPixels) {
+    public NativeAd(String brandName, String clickthroughUrl, String imageUrl, String caption, String header,
+                    String logoUrl, List<String> impressionPixels, List<String> clickPixels, long ttlMillis,
+                    AdSizeBucket sizeBucket, String format) {
         this.brandName = Utils.getStringElseNull(brandName);
         this.clickthroughUrl = clickthroughUrl;
         this.imageUrl = Utils.getStringElseNull(imageUrl);
         this.caption = Utils.getStringElseNull(caption);
         this.header = Utils.getStringElseNull(header);
-        this.context = context;
-        this.logoUrl = Utils.getStringElseNull(logoUrl);
-        this.impressionPixels = impressionPixels;
-        this.clickPixels = clickPixels;
+        this.logoUrl = logoUrl;
+        this.format = format != null ? format : DEFAULT_FORMAT;
+        this.impressionPixelCount = impressionPixels.size();
+        List<String> allPixels = new ArrayList<>(impressionPixels.size() + clickPixels.size());
+        allPixels.addAll(impressionPixels);
+        allPixels.addAll(clickPixels);
+        this.pixels = InternedUrls.flatten(allPixels);
+        this.sizeBucket = sizeBucket;
         this.created = System.currentTimeMillis();
+        this.expiresAt = created + ttlMillis;
+    }
+
+    /** @deprecated the context is not kept, use the constructor without one */
+    @Deprecated
+    public NativeAd(Context context, String brandName, String clickthroughUrl, String imageUrl, String caption,
+                    String header, String logoUrl, List<String> impressionPixels, List<String> clickPixels) {
+        this(brandName, clickthroughUrl, imageUrl, caption, header, logoUrl, impressionPixels, clickPixels,
+                NativeAdConfig.DEFAULT.getDefaultAdTtlMillis(), null);
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
     }
 
-    void fireImpression() {
+    public boolean isExpired(long now) {
+        return now >= expiresAt;
+    }
+
+    void fireImpression(Controller controller) {
         if (impressionFired) {
             return;
         }
-        for (String impressionPixel: impressionPixels) {
-            ImageRequest request = new ImageRequest(impressionPixel,
-                    new Response.Listener<Bitmap>() {
-                        @Override
-                        public void onResponse(Bitmap bitmap) {
-                            impressionFired = true;
-                        }
-                    }, 1, 1, null, null,
-                    new Response.ErrorListener() {
-                        public void onErrorResponse(VolleyError error) {
-                        }
-                    });
-            request.setRetryPolicy(new DefaultRetryPolicy(20*1000, 1,
-                    DefaultRetryPolicy.DEFAULT_BACKOFF_MULT));
-            Controller.getInstance(context).addToRequestQueue(request);
+        impressionFired = true;
+        NativeAdEventLog.record(NativeAdEventLog.PIXEL_FIRED, NativeAdEventLog.KIND_IMPRESSION, impressionPixelCount);
+        for (int i = 0; i < impressionPixelCount; i++) {
+            controller.firePixel(InternedUrls.get(pixels, i));
         }
     }
 
-    void fireClick() {
+    void fireClick(Controller controller) {
         if (clickFired) {
             return;
         }
-        for (String clickPixel: clickPixels) {
-            ImageRequest request = new ImageRequest(clickPixel,
-                    new Response.Listener<Bitmap>() {
-                        @Override
-                        public void onResponse(Bitmap bitmap) {
-                            impressionFired = true;
-                        }
-                    }, 1, 1, null, null,
-                    new Response.ErrorListener() {
-                        public void onErrorResponse(VolleyError error) {
-                        }
-                    });
-            request.setRetryPolicy(new DefaultRetryPolicy(20*1000, 1,
-                    DefaultRetryPolicy.DEFAULT_BACKOFF_MULT));
-            Controller.getInstance(context).addToRequestQueue(request);
-         }
+        clickFired = true;
+        int pixelCount = pixels.length / 2;
+        NativeAdEventLog.record(NativeAdEventLog.PIXEL_FIRED, NativeAdEventLog.KIND_CLICK,
+                pixelCount - impressionPixelCount);
+        for (int i = impressionPixelCount; i < pixelCount; i++) {
+            controller.firePixel(InternedUrls.get(pixels, i));
+        }
     }
 
     public boolean isImpressionFired() {
@@ -87,22 +103,33 @@ public class NativeAd {
         return clickFired;
     }
 
-    public Context getContext() {
-        return context;
-    }
-
+    /** Built on every call, the ad only keeps the compact form */
     public List<String> getImpressionPixels() {
-        return impressionPixels;
+        return pixelList(0, impressionPixelCount);
     }
 
+    /** Built on every call, the ad only keeps the compact form */
     public List<String> getClickPixels() {
-        return clickPixels;
+        return pixelList(impressionPixelCount, pixels.length / 2);
+    }
+
+    private List<String> pixelList(int from, int to) {
+        List<String> list = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            list.add(InternedUrls.get(pixels, i));
+        }
+        return list;
     }
 
     public String getBrandName() {
         return brandName;
     }
 
+    /** Brand line as bound, built on every call, view holders keep the one they show */
+    public String getSponsoredBy() {
+        return "Sponsored by " + brandName;
+    }
+
     public String getClickthroughUrl() {
         return clickthroughUrl;
     }
@@ -111,6 +138,14 @@ public class NativeAd {
         return imageUrl;
     }
 
+    /** Image URL asking the image server for the given size, built on every call */
+    public String getImageUrl(AdSizeBucket slotBucket) {
+        if (slotBucket == null) {
+            return imageUrl;
+        }
+        return ImageUrls.sized(imageUrl, slotBucket);
+    }
+
     public String getCaption() {
         return caption;
     }
@@ -119,8 +154,19 @@ public class NativeAd {
         return header;
     }
 
+    /** Null when the exchange sent no logo */
     public String getLogoUrl() {
         return logoUrl;
     }
 
+    /** Creative format as sent by the exchange, DEFAULT_FORMAT when it sent none */
+    public String getFormat() {
+        return format;
+    }
+
+    /** Size the creative was auctioned for */
+    public AdSizeBucket getSizeBucket() {
+        return sizeBucket;
+    }
+
 }
@@ -1,12 +1,14 @@
 package com.triplelift.sdk;
 
 import android.content.Context;
-import android.content.Intent;
-import android.net.Uri;
+import android.database.DataSetObserver;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.view.ViewTreeObserver;
+import android.widget.AbsListView;
 import android.widget.Adapter;
 import android.widget.BaseAdapter;
 import android.widget.TextView;
@@ -14,48 +16,132 @@ import android.widget.TextView;
 import com.android.volley.toolbox.ImageLoader;
 import com.android.volley.toolbox.NetworkImageView;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
-public class NativeAdAdapter extends BaseAdapter {
+public class NativeAdAdapter extends BaseAdapter implements AbsListView.RecyclerListener {
 
     private static final double DEFAULT_AR = 1.618;
+    private static final int PREFETCH_CHECK_INTERVAL = 200;
+    private static final String STATE_KEY = "com.triplelift.sdk.NativeAdAdapter.state";
     private Adapter originalAdapter;
     private Context context;
-    private NativeAdLayout nativeAdLayout;
     private String invCode;
     private Map<String, String> userData;
-    private int nativeAdLayoutId;
+    // one view type per template, the default template first
+    private final List<Template> templates;
     private NativeAdController nativeAdController;
-    private NativeFeedPlacement nativeFeedPlacement;
+    private NativeFeedPlacement<NativeAd> nativeFeedPlacement;
     private NativeDisplayAdViewHolder viewHolder;
     private double aspectRatio;
+    private final NativeAdSlotSize slotSize;
     private Integer width;
     private Integer height;
+    private final ScrollVelocity scrollVelocity;
+    private long lastPrefetchCheck;
+    // content rows the placement was last mapped against
+    private int contentCount;
+    // the placement before content shrank without saying where, held until a notifyContentRemoved
+    // redoes the removal where it happened or the content grows back, a clear and reload
+    private NativeFeedPlacement.State<NativeAd> beforeTrim;
+    private int countBeforeTrim;
+    private final DataSetObserver contentObserver = new DataSetObserver() {
+        @Override
+        public void onChanged() {
+            onContentChanged();
+            notifyDataSetChanged();
+        }
+
+        @Override
+        public void onInvalidated() {
+            notifyDataSetInvalidated();
+        }
+    };
+
+    static class Template {
+        final String format;
+        final int layoutId;
+        NativeAdLayout layout;
+
+        Template(String format, int layoutId, NativeAdLayout layout) {
+            this.format = format;
+            this.layoutId = layoutId;
+            this.layout = layout;
+        }
+    }
+
+    // what a recreated adapter needs to show the same ads without an auction, no view or context
+    static class RetainedState {
+        final String invCode;
+        final int contentCount;
+        final NativeFeedPlacement.State<NativeAd> placement;
+        final Map<String, Map<AdSizeBucket, NativeAdPool>> pools;
+
+        RetainedState(String invCode, int contentCount, NativeFeedPlacement.State<NativeAd> placement,
+                      Map<String, Map<AdSizeBucket, NativeAdPool>> pools) {
+            this.invCode = invCode;
+            this.contentCount = contentCount;
+            this.placement = placement;
+            this.pools = pools;
+        }
+    }
 
     static class NativeDisplayAdViewHolder {
+        Template template;
         TextView brand;
         TextView header;
         TextView caption;
         NetworkImageView mainImage;
         NetworkImageView logo;
+        private String sponsoredByBrand;
+        private String sponsoredBy;
+
+        // the brand line of the ad last bound, a rebind of the same brand builds no string
+        String sponsoredBy(NativeAd nativeAd) {
+            if (sponsoredBy == null || !TextUtils.equals(sponsoredByBrand, nativeAd.getBrandName())) {
+                sponsoredByBrand = nativeAd.getBrandName();
+                sponsoredBy = nativeAd.getSponsoredBy();
+            }
+            return sponsoredBy;
+        }
     }
 
     public NativeAdAdapter(Context context, BaseAdapter adapter,
                            String invCode, int nativeAdLayoutId, int initialPosition,
                            int repeatInterval) {
+        this(context, adapter, invCode, nativeAdLayoutId, initialPosition, repeatInterval, null);
+    }
+
+    /** With its own NativeAdConfig instead of the SDK-wide one, null for the SDK-wide one */
+    public NativeAdAdapter(Context context, BaseAdapter adapter,
+                           String invCode, int nativeAdLayoutId, int initialPosition,
+                           int repeatInterval, NativeAdConfig config) {
         this.context = context;
         this.originalAdapter = adapter;
-        this.nativeAdLayoutId = nativeAdLayoutId;
+        this.templates = new ArrayList<>();
+        this.templates.add(new Template(NativeAd.DEFAULT_FORMAT, nativeAdLayoutId, null));
         this.invCode = invCode;
         this.userData = new ConcurrentHashMap<>();
         this.viewHolder = new NativeDisplayAdViewHolder();
         this.aspectRatio = DEFAULT_AR;
+        this.scrollVelocity = new ScrollVelocity();
 
         this.nativeAdController = new NativeAdController(context);
+        this.slotSize = new NativeAdSlotSize(nativeAdController, userData);
+        if (config != null) {
+            this.nativeAdController.setConfig(config);
+        }
         this.nativeAdController.registerInvCode(invCode);
         NativeFeedPositions nativeFeedPosition = new NativeFeedPositions(new int[] {initialPosition}, repeatInterval);
-        this.nativeFeedPlacement = new NativeFeedPlacement(nativeFeedPosition);
+        this.nativeFeedPlacement = new NativeFeedPlacement<>(nativeFeedPosition,
+                nativeAdController.getConfig().getPlacementCapacity());
+        this.contentCount = adapter.getCount();
+        adapter.registerDataSetObserver(contentObserver);
 
         setImplicitUserData();
     }
@@ -63,25 +149,144 @@ public class NativeAdAdapter extends BaseAdapter {
     private void setImplicitUserData() {
         int deviceWidth = Utils.getWidth(context);
         int adjustedHeight = (int) Math.round(deviceWidth / aspectRatio);
-        this.userData.put("width", Integer.toString(deviceWidth));
-        this.userData.put("height", Integer.toString(adjustedHeight));
-        try {
-            String ip = Utils.getIpAddress();
-            this.userData.put("ip", ip);
-        } catch (Exception e) {
-            //DO NOTHING
-        }
+        setDimensions(deviceWidth, adjustedHeight);
+        // the IP is looked up off the main thread by the Controller and added to each auction
     }
 
+    /** Rounded to an AdSizeBucket, ads are pooled and auctioned per bucket */
     public void setDimensions(Integer width, Integer height) {
+        slotSize.setDimensions(width, height);
+    }
 
-        if (width != null) {
-            this.userData.put("width", Integer.toString(width));
+    private void trackScroll(int position, ViewGroup parent) {
+        long now = SystemClock.uptimeMillis();
+        // the list's first visible row moves with the scroll, rebinds in place do not move it
+        int visiblePosition = parent instanceof AbsListView
+                ? ((AbsListView) parent).getFirstVisiblePosition() : position;
+        scrollVelocity.onPositionVisible(visiblePosition, now);
+        if (now - lastPrefetchCheck < PREFETCH_CHECK_INTERVAL) {
+            return;
         }
+        lastPrefetchCheck = now;
+
+        // every open slot the list reaches before an auction started now could answer needs an ad
+        int rowsAhead = scrollVelocity.rowsWithin(nativeAdController.auctionLatencyWindow(), now);
+        int slotsAhead = rowsAhead >= 0
+                ? nativeFeedPlacement.emptySlotsBetween(position, position + rowsAhead + 1)
+                : nativeFeedPlacement.emptySlotsBetween(position + rowsAhead, position + 1);
+        nativeAdController.setPoolDepth(invCode, slotSize.getSizeBucket(), slotsAhead);
+    }
 
-        if (height != null) {
-            this.userData.put("height", Integer.toString(height));
+    // a plain notifyDataSetChanged says nothing of where rows went. Growth is taken as rows appended,
+    // shrinking hides the ads past the new end without dropping them, content growing back after a
+    // shrink or a clear gets the held placement again
+    private void onContentChanged() {
+        int count = originalAdapter.getCount();
+        if (count == contentCount) {
+            return;
+        }
+        if (count < contentCount) {
+            // the first of several shrinks in a row holds the placement they started from
+            if (beforeTrim == null) {
+                beforeTrim = nativeFeedPlacement.saveState();
+                countBeforeTrim = contentCount;
+            }
+            nativeFeedPlacement.removeContent(count, contentCount - count);
+        } else if (beforeTrim != null) {
+            nativeFeedPlacement.restoreState(beforeTrim);
+            beforeTrim = null;
+            if (count < countBeforeTrim) {
+                beforeTrim = nativeFeedPlacement.saveState();
+                nativeFeedPlacement.removeContent(count, countBeforeTrim - count);
+                releaseBeforeTrim();
+            }
         }
+        contentCount = count;
+    }
+
+    // the held placement is given up, its ads no longer placed are served again rather than auctioned
+    private void releaseBeforeTrim() {
+        if (beforeTrim == null) {
+            return;
+        }
+        NativeFeedPlacement.State<NativeAd> placed = nativeFeedPlacement.saveState();
+        Set<NativeAd> live = Collections.newSetFromMap(new IdentityHashMap<NativeAd, Boolean>());
+        for (int i = 0; i < placed.adsLive(); i++) {
+            live.add(placed.getNativeAd(i));
+        }
+        for (int i = 0; i < beforeTrim.adsLive(); i++) {
+            if (!live.contains(beforeTrim.getNativeAd(i))) {
+                nativeAdController.returnNativeAd(invCode, beforeTrim.getNativeAd(i));
+            }
+        }
+        beforeTrim = null;
+    }
+
+    /**
+     * Tells the adapter count rows were inserted into the content adapter before the row at
+     * contentPosition. Placed ads stay with the rows around them, no ad is auctioned again.
+     * Call it once the content adapter holds the new rows, before or after its own
+     * notifyDataSetChanged.
+     */
+    public void notifyContentInserted(int contentPosition, int count) {
+        releaseBeforeTrim();
+        nativeFeedPlacement.insertContent(contentPosition, count);
+        contentCount = originalAdapter.getCount();
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Tells the adapter count rows were removed from the content adapter starting at
+     * contentPosition. Ads left between removed rows only go with them. Call it once the content
+     * adapter dropped the rows, before or after its own notifyDataSetChanged.
+     */
+    public void notifyContentRemoved(int contentPosition, int count) {
+        // the content adapter notified first and this removal was taken for a trim at the end
+        if (beforeTrim != null && countBeforeTrim - count == contentCount
+                && contentCount == originalAdapter.getCount()) {
+            nativeFeedPlacement.restoreState(beforeTrim);
+            beforeTrim = null;
+        }
+        releaseBeforeTrim();
+        nativeFeedPlacement.removeContent(contentPosition, count);
+        contentCount = originalAdapter.getCount();
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Keeps the placed ads and the pool in the SDK while the activity is recreated, call it from
+     * onSaveInstanceState. Only a key goes into the bundle.
+     */
+    public void onSaveInstanceState(Bundle outState) {
+        RetainedState state = new RetainedState(invCode, contentCount, nativeFeedPlacement.saveState(),
+                nativeAdController.retainPools());
+        outState.putString(STATE_KEY, Controller.getInstance(context).retainState(state));
+    }
+
+    /**
+     * Puts back the ads the previous adapter had placed, at the same positions, and its pool.
+     * Call it from onCreate before the adapter is set on the list. False when there is nothing to
+     * restore, after the process was killed for one, and the adapter starts empty as usual.
+     */
+    public boolean onRestoreInstanceState(Bundle savedInstanceState) {
+        if (savedInstanceState == null) {
+            return false;
+        }
+        Object retained = Controller.getInstance(context).takeRetainedState(savedInstanceState.getString(STATE_KEY));
+        if (!(retained instanceof RetainedState)) {
+            return false;
+        }
+        RetainedState state = (RetainedState) retained;
+        if (!state.invCode.equals(invCode) || !nativeFeedPlacement.restoreState(state.placement)) {
+            return false;
+        }
+        // the placement was mapped against this many rows, content reloading after the restore
+        // comes back to it rather than being taken for an append
+        contentCount = state.contentCount;
+        beforeTrim = null;
+        nativeAdController.adoptPools(state.pools);
+        notifyDataSetChanged();
+        return true;
     }
 
     public void setAspectRatio(double aspectRatio) {
@@ -93,9 +298,12 @@ public class NativeAdAdapter extends BaseAdapter {
             if (nativeFeedPlacement.isAdPositionLive(position)) {
                 return nativeFeedPlacement.getNativeAd(position);
             } else {
-                NativeAd nativeAd = nativeAdController.retrieveNativeAd(invCode);
+                // an ad placed now would be lost restoring the held placement, its ads fill the slots instead
+                releaseBeforeTrim();
+                NativeAd nativeAd = nativeAdController.retrieveNativeAd(invCode, slotSize.getSizeBucket());
                 if (nativeAd != null) {
                     nativeFeedPlacement.placeNativeAd(nativeAd, position);
+                    NativeAdEventLog.record(NativeAdEventLog.AD_PLACED, position, nativeFeedPlacement.adsLive());
                     notifyDataSetChanged();
                     return nativeAd;
                 }
@@ -105,16 +313,48 @@ public class NativeAdAdapter extends BaseAdapter {
         return null;
     }
 
-    // Currently supports only a single ad format
+    /** 0 for content, 1 and up for ads, one per registered template */
     public int getNativeAdViewType(int position) {
-        if (getNativeAd(position) != null) {
-            return 1;
+        NativeAd nativeAd = getNativeAd(position);
+        if (nativeAd != null) {
+            return templateIndex(nativeAd) + 1;
+        }
+        return 0;
+    }
+
+    // ads of a format without a template of its own show in the default one
+    private int templateIndex(NativeAd nativeAd) {
+        for (int i = 1; i < templates.size(); i++) {
+            if (templates.get(i).format.equals(nativeAd.getFormat())) {
+                return i;
+            }
         }
         return 0;
     }
 
+    /** Layout for ads without a registered format, inflated from the layout id given to the constructor */
     public void registerNativeAdLayout(NativeAdLayout layout) {
-        this.nativeAdLayout = layout;
+        templates.get(0).layout = layout;
+    }
+
+    /**
+     * Shows ads of the given format, as named by the auction response, in a layout of their own.
+     * Each template is its own view type, so the list only recycles ad views into ads of the same
+     * format. Register every template before the adapter is set on the list, the list reads the
+     * view type count once.
+     */
+    public void registerNativeAdLayout(String format, int layoutId, NativeAdLayout layout) {
+        if (NativeAd.DEFAULT_FORMAT.equals(format)) {
+            templates.set(0, new Template(format, layoutId, layout));
+            return;
+        }
+        for (int i = 1; i < templates.size(); i++) {
+            if (templates.get(i).format.equals(format)) {
+                templates.set(i, new Template(format, layoutId, layout));
+                return;
+            }
+        }
+        templates.add(new Template(format, layoutId, layout));
     }
 
     public void addUserData(Map<String, String> userData) {
@@ -122,7 +362,7 @@ public class NativeAdAdapter extends BaseAdapter {
     }
 
     public void loadAds() {
-        nativeAdController.requestAds(invCode, userData);
+        nativeAdController.requestAds(invCode, slotSize.getSizeBucket(), userData);
     }
 
     private View getNativeAdView(int position, View view, ViewGroup parent) {
@@ -132,70 +372,66 @@ public class NativeAdAdapter extends BaseAdapter {
             return null;
         }
 
-        if (view == null) {
-            view = LayoutInflater.from(context).inflate(nativeAdLayoutId, parent, false);
+        long bindStart = System.nanoTime();
+        Template template = templates.get(templateIndex(nativeAd));
+
+        // the view type keeps recycled views to their own template, anything else is inflated afresh.
+        // A holder built without a template is taken for one of the current template
+        NativeDisplayAdViewHolder recycled = view != null && view.getTag() instanceof NativeDisplayAdViewHolder
+                ? (NativeDisplayAdViewHolder) view.getTag() : null;
+        if (recycled != null && recycled.template == null) {
+            recycled.template = template;
+        }
+        if (recycled == null || recycled.template != template) {
+            NativeAdLayout layout = template.layout;
+            view = LayoutInflater.from(context).inflate(template.layoutId, parent, false);
             viewHolder = new NativeDisplayAdViewHolder();
-            viewHolder.brand = (TextView) view.findViewById(nativeAdLayout.getBrandId());
-            viewHolder.header = (TextView) view.findViewById(nativeAdLayout.getHeaderId());
-            viewHolder.caption = (TextView) view.findViewById(nativeAdLayout.getCaptionId());
-            viewHolder.mainImage = (NetworkImageView) view.findViewById(nativeAdLayout.getImageId());
-            //viewHolder.logo = (NetworkImageView) view.findViewById(nativeAdLayout.getLogoId());
+            viewHolder.template = template;
+            viewHolder.brand = (TextView) view.findViewById(layout.getBrandId());
+            viewHolder.header = (TextView) view.findViewById(layout.getHeaderId());
+            viewHolder.caption = (TextView) view.findViewById(layout.getCaptionId());
+            viewHolder.mainImage = (NetworkImageView) view.findViewById(layout.getImageId());
+            //viewHolder.logo = (NetworkImageView) view.findViewById(layout.getLogoId());
             view.setTag(viewHolder);
-
-//            userData.put("width", Integer.toString(viewHolder.mainImage.getWidth()));
-//            userData.put("height", Integer.toString(viewHolder.mainImage.getHeight()));
+            slotSize.track(viewHolder.mainImage, viewHolder.header, viewHolder.caption, viewHolder.brand,
+                    layout, template.format);
         } else {
-            if (view.getTag() == null) {
-                return null;
-            }
-            viewHolder = (NativeDisplayAdViewHolder) view.getTag();
+            viewHolder = recycled;
         }
 
-        ImageLoader imageLoader = Controller.getInstance(context).getImageLoader();
-
-        viewHolder.mainImage.getViewTreeObserver().addOnPreDrawListener(
-                new ViewTreeObserver.OnPreDrawListener() {
-                    public boolean onPreDraw() {
-                        int width = viewHolder.mainImage.getMeasuredWidth();
-                        int height = viewHolder.mainImage.getMeasuredHeight();
-                        setDimensions(width, height);
-                        return true;
-                    }
-                });
+        final Controller controller = Controller.getInstance(context);
+        ImageLoader imageLoader = controller.getImageLoader();
 
         try {
 
-            viewHolder.brand.setText("Sponsored by " + nativeAd.getBrandName());
+            viewHolder.brand.setText(viewHolder.sponsoredBy(nativeAd));
             viewHolder.header.setText(nativeAd.getHeader());
             viewHolder.caption.setText(nativeAd.getCaption());
             //viewHolder.logo.setImageUrl(nativeAd.getLogoUrl(), imageLoader);
-            viewHolder.mainImage.setImageUrl(nativeAd.getImageUrl(), imageLoader);
+            viewHolder.mainImage.setImageUrl(controller.sizedImageUrl(nativeAd, slotSize.slotBucket(viewHolder.mainImage)), imageLoader);
 
-            //TODO open in webview
+            final NativeAdClickthrough clickthrough = controller.getClickthrough();
             view.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    Intent browserIntent =
-                            new Intent(Intent.ACTION_VIEW, Uri.parse(nativeAd.getClickthroughUrl()));
-                    browserIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                    nativeAd.fireClick();
-                    context.startActivity(browserIntent);
+                    clickthrough.open(context, controller, nativeAd);
                 }
             });
 
-            nativeAd.fireImpression();
+            nativeAd.fireImpression(controller);
+            clickthrough.prewarm(nativeAd.getClickthroughUrl());
 
         } catch (Exception exception) {
-            System.out.println(exception.getMessage());
+            NativeAdEventLog.record(NativeAdEventLog.ERROR, NativeAdEventLog.ERROR_BIND, invCode.hashCode());
             return null;
         }
 
+        controller.getMetrics().onBind(System.nanoTime() - bindStart);
         return view;
     }
 
     public int getNativeAdViewTypeCount() {
-        // TODO implement
-        return 1;
+        return templates.size();
     }
 
     // TODO implement correctly
@@ -234,6 +470,7 @@ public class NativeAdAdapter extends BaseAdapter {
 
     @Override
     public View getView(int position, View view, ViewGroup viewGroup) {
+        trackScroll(position, viewGroup);
 
         View nativeAdView = getNativeAdView(position, view, viewGroup);
 
@@ -247,7 +484,7 @@ public class NativeAdAdapter extends BaseAdapter {
     @Override
     public int getItemViewType(final int position) {
         int nativeAdViewType = getNativeAdViewType(position);
-        if (nativeAdViewType == 1) {
+        if (nativeAdViewType > 0) {
             return nativeAdViewType + originalAdapter.getViewTypeCount() - 1;
         }
 
@@ -265,8 +502,51 @@ public class NativeAdAdapter extends BaseAdapter {
         return originalAdapter.getViewTypeCount() + getNativeAdViewTypeCount();
     }
 
+    /**
+     * Cancels the creative load of an ad row scrolled off screen, so bandwidth goes to the rows in
+     * view. Set the adapter as the list's RecyclerListener, or call this from your own.
+     */
+    @Override
+    public void onMovedToScrapHeap(View view) {
+        if (view.getTag() instanceof NativeDisplayAdViewHolder) {
+            NativeDisplayAdViewHolder holder = (NativeDisplayAdViewHolder) view.getTag();
+            if (holder.mainImage != null) {
+                // a rebind of the same ad finds the bitmap in the memory cache if it had arrived
+                holder.mainImage.setImageUrl(null, Controller.getInstance(context).getImageLoader());
+            }
+        }
+    }
+
+    // the template ads without a registered format are shown in
+    Template getDefaultTemplate() {
+        return templates.get(0);
+    }
+
+    NativeAdController getNativeAdController() {
+        return nativeAdController;
+    }
+
+    /** Sends every auction to all of these base URLs at once, the best fill within the deadline wins */
+    public void setAuctionEndpoints(List<String> baseUrls, int fanOutDeadlineMillis) {
+        nativeAdController.setEndpoints(baseUrls);
+        nativeAdController.setFanOutDeadline(fanOutDeadlineMillis);
+    }
+
     public void setDebug() {
         nativeAdController.setDebug(true);
     }
 
+    public void pause() {
+        nativeAdController.pause();
+    }
+
+    public void resume() {
+        nativeAdController.resume();
+    }
+
+    public void destroy() {
+        originalAdapter.unregisterDataSetObserver(contentObserver);
+        nativeAdController.destroy();
+    }
+
 }
@@ -0,0 +1,202 @@
+package com.triplelift.sdk;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Opens clickthroughs, in the browser or in NativeAdLandingActivity, and gets their landing pages
+ * ready while the ad is on screen: the host is resolved ahead of the tap and, when enabled, the
+ * landing document is fetched so the in-app view can show it without going to the network.
+ * Prefetching requests the clickthrough URL before any tap, only enable it for clickthroughs that
+ * do not count clicks themselves.
+ */
+class NativeAdClickthrough {
+
+    private static final int HOST_WARM_INTERVAL = 60 * 1000;
+    private static final int DOCUMENT_TTL = 2 * 60 * 1000;
+    private static final int MAX_DOCUMENTS = 4;
+    private static final int MAX_DOCUMENT_BYTES = 256 * 1024;
+    private static final int TIMEOUT = 5 * 1000;
+
+    static class Document {
+        // where redirects ended up, relative links resolve against it
+        final String baseUrl;
+        final String html;
+        final String encoding;
+        final long fetched;
+
+        Document(String baseUrl, String html, String encoding, long fetched) {
+            this.baseUrl = baseUrl;
+            this.html = html;
+            this.encoding = encoding;
+            this.fetched = fetched;
+        }
+    }
+
+    private final Context context;
+    private final Handler handler;
+    // warmedHosts is confined to the prewarm thread, documents are shared with the landing view
+    private final Map<String, Long> warmedHosts;
+    private final Map<String, Document> documents;
+    private volatile boolean inAppLandingPages = false;
+    private volatile boolean prefetchLandingPages = false;
+
+    NativeAdClickthrough(Context context, Handler handler) {
+        this.context = context;
+        this.handler = handler;
+        this.warmedHosts = new HashMap<>();
+        this.documents = new LinkedHashMap<>(MAX_DOCUMENTS, 0.75f, true);
+    }
+
+    void setInAppLandingPages(boolean inAppLandingPages) {
+        this.inAppLandingPages = inAppLandingPages;
+    }
+
+    void setPrefetchLandingPages(boolean prefetchLandingPages) {
+        this.prefetchLandingPages = prefetchLandingPages;
+    }
+
+    /** Called once the ad is on screen, returns straight away */
+    void prewarm(final String clickthroughUrl) {
+        if (clickthroughUrl == null || clickthroughUrl.isEmpty()) {
+            return;
+        }
+        final boolean prefetch = inAppLandingPages && prefetchLandingPages;
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                resolveHost(clickthroughUrl);
+                if (prefetch) {
+                    prefetchDocument(clickthroughUrl);
+                }
+            }
+        });
+    }
+
+    /** Navigates first, click pixels go out on the request queue alongside */
+    void open(Context caller, Controller controller, NativeAd nativeAd) {
+        String clickthroughUrl = nativeAd.getClickthroughUrl();
+        Intent intent;
+        if (inAppLandingPages) {
+            intent = new Intent(context, NativeAdLandingActivity.class);
+            intent.putExtra(NativeAdLandingActivity.EXTRA_URL, clickthroughUrl);
+        } else {
+            intent = new Intent(Intent.ACTION_VIEW, Uri.parse(clickthroughUrl));
+        }
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        caller.startActivity(intent);
+        nativeAd.fireClick(controller);
+    }
+
+    /** The prefetched landing document, at most once, null when there is none or it went stale */
+    Document takeDocument(String clickthroughUrl) {
+        synchronized (documents) {
+            Document document = documents.remove(clickthroughUrl);
+            if (document == null || SystemClock.elapsedRealtime() - document.fetched > DOCUMENT_TTL) {
+                return null;
+            }
+            return document;
+        }
+    }
+
+    private void resolveHost(String clickthroughUrl) {
+        String host = Uri.parse(clickthroughUrl).getHost();
+        if (host == null) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        Long warmed = warmedHosts.get(host);
+        if (warmed != null && now - warmed < HOST_WARM_INTERVAL) {
+            return;
+        }
+        warmedHosts.put(host, now);
+        try {
+            // fills the system resolver cache, which the browser and WebView look up through as well
+            InetAddress.getAllByName(host);
+        } catch (IOException e) {
+            warmedHosts.remove(host);
+        }
+    }
+
+    private void prefetchDocument(String clickthroughUrl) {
+        synchronized (documents) {
+            if (documents.containsKey(clickthroughUrl)) {
+                return;
+            }
+        }
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(clickthroughUrl).openConnection();
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+            connection.setInstanceFollowRedirects(true);
+            String contentType = connection.getContentType();
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK || contentType == null
+                    || !contentType.startsWith("text/html")
+                    || connection.getContentLength() > MAX_DOCUMENT_BYTES) {
+                return;
+            }
+            String encoding = charset(contentType);
+            byte[] body = read(connection.getInputStream());
+            if (body == null) {
+                return;
+            }
+            Document document = new Document(connection.getURL().toString(), new String(body, encoding), encoding,
+                    SystemClock.elapsedRealtime());
+            synchronized (documents) {
+                documents.put(clickthroughUrl, document);
+                Iterator<String> eldest = documents.keySet().iterator();
+                while (documents.size() > MAX_DOCUMENTS) {
+                    eldest.next();
+                    eldest.remove();
+                }
+            }
+        } catch (IOException e) {
+            // the landing view falls back to loading the page itself
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private static String charset(String contentType) {
+        int index = contentType.indexOf("charset=");
+        if (index == -1) {
+            return "UTF-8";
+        }
+        return contentType.substring(index + "charset=".length()).trim().replace("\"", "");
+    }
+
+    // null when the document is over MAX_DOCUMENT_BYTES
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                if (out.size() > MAX_DOCUMENT_BYTES) {
+                    return null;
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+}
@@ -3,20 +3,17 @@ package com.triplelift.sdk;
 import android.content.Context;
 import android.os.Handler;
 
-import com.android.volley.DefaultRetryPolicy;
-import com.android.volley.Request;
 import com.android.volley.Response;
+import com.android.volley.TimeoutError;
 import com.android.volley.VolleyError;
-import com.android.volley.VolleyLog;
-import com.android.volley.toolbox.JsonObjectRequest;
 
-import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -25,29 +22,72 @@ import java.util.concurrent.ConcurrentHashMap;
 public class NativeAdController {
 
     private static final String TAG = NativeAdController.class.getSimpleName();
-    private static final String BASE_URL = "http://tlx.3lift.com/mj/auction?invType=app&";
-    //    private static final String BASE_URL = "http://10.0.1.86:8076/mj/auction?invType=app&";
-    private static final int CACHE_EXPIRATION = 5 * 60 * 1000;
-    private static final int[] RETRY_DELAY = new int[]{1000, 1000 * 5, 1000 * 30, 1000 * 60, 1000 * 60 * 3};
-    private static final int CACHE_SIZE = 1;
+    private static final String BASE_URL = AuctionUrlBuilder.BASE_URL;
+    private static final int DEFAULT_AUCTION_LATENCY = 1000;
     private Map<String, String> requestParams;
-    private boolean requestFired = false;
     private boolean retryFired = false;
     private int retryIndex = 0;
     private boolean debug = false;
+    private boolean paused = false;
+    private boolean destroyed = false;
+    private List<String> endpoints = Collections.singletonList(BASE_URL);
+    private NativeAdConfig config;
+    private int[] retryDelays;
+    private int fanOutDeadline;
+    // per ad format, each format has its own layout
+    private final Map<String, NativeAdTextMetrics> textMetrics;
 
     private final Context context;
     private final Handler cacheHandler;
     private Runnable cacheRunnable;
-    private final Map<String, List<NativeAd>> nativeAdCache;
+    private Runnable sweepRunnable;
+    private final Map<String, Map<AdSizeBucket, NativeAdPool>> nativeAdPools;
     private final Set<String> invCodes;
+    private final Set<NativeAdRequest> pendingRequests;
+    // refills not yet answered, a deferred one may still be waiting for the radio
+    private final Set<AuctionFanOut> pendingRefills;
+    private final String requestTag;
 
     NativeAdController(Context context) {
         this.requestParams = new ConcurrentHashMap<>();
         this.context = context;
-        this.nativeAdCache = new HashMap<>();
+        this.nativeAdPools = new HashMap<>();
+        this.textMetrics = new HashMap<>();
         this.cacheHandler = new Handler();
         this.invCodes = new HashSet<>();
+        this.pendingRequests = new HashSet<>();
+        this.pendingRefills = new HashSet<>();
+        this.requestTag = TAG + "@" + Integer.toHexString(System.identityHashCode(this));
+        setConfig(Controller.getInstance(context).getConfig());
+    }
+
+    /** Tuning for this unit only, pools already created keep their size */
+    void setConfig(NativeAdConfig config) {
+        this.config = config;
+        this.retryDelays = config.getRetryDelaysMillis();
+        this.fanOutDeadline = config.getFanOutDeadlineMillis();
+    }
+
+    NativeAdConfig getConfig() {
+        return config;
+    }
+
+    /** The pools as they are, for a controller taking over after a configuration change */
+    Map<String, Map<AdSizeBucket, NativeAdPool>> retainPools() {
+        return new HashMap<>(nativeAdPools);
+    }
+
+    /**
+     * Serves the ads pooled by a destroyed controller. Their requests died with it, expired ads go
+     * with the next sweep or retrieve.
+     */
+    void adoptPools(Map<String, Map<AdSizeBucket, NativeAdPool>> pools) {
+        for (Map.Entry<String, Map<AdSizeBucket, NativeAdPool>> entry: pools.entrySet()) {
+            for (NativeAdPool pool: entry.getValue().values()) {
+                pool.requestsInFlight = 0;
+            }
+            nativeAdPools.put(entry.getKey(), new HashMap<>(entry.getValue()));
+        }
     }
 
     public void registerInvCode(String invCode) {
@@ -55,195 +95,414 @@ public class NativeAdController {
     }
 
     public boolean adsAvailable() {
-        return !nativeAdCache.isEmpty();
+        for (Map<AdSizeBucket, NativeAdPool> pools: nativeAdPools.values()) {
+            for (NativeAdPool pool: pools.values()) {
+                if (pool.size() > 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     public void requestAds(String invCode, Map<String, String> requestParams) {
-        this.requestParams = requestParams;
-        fillCache(invCode);
+        requestAds(invCode, sizeBucketFor(requestParams), requestParams);
     }
 
-    public void requestAd(String invCode, Map<String, String> requestParams, NativeAdCallback nativeAdCallback) {
+    public void requestAds(String invCode, AdSizeBucket sizeBucket, Map<String, String> requestParams) {
         this.requestParams = requestParams;
-        requestAdWithCallbacks(invCode, nativeAdCallback);
+        fillCache(getPool(invCode, sizeBucket));
     }
 
-    protected NativeAd retrieveNativeAd(String invCode) {
-        NativeAd nativeAd = null;
-        long now = System.currentTimeMillis();
+    public NativeAdRequest requestAd(String invCode, Map<String, String> requestParams, NativeAdCallback nativeAdCallback) {
+        return requestAd(invCode, requestParams, nativeAdCallback, 0);
+    }
 
-        List<NativeAd> placementCache = nativeAdCache.get(invCode);
+    /** A deadline of 0 or less falls back to the default request timeout */
+    public NativeAdRequest requestAd(String invCode, Map<String, String> requestParams,
+                                     NativeAdCallback nativeAdCallback, long deadlineMillis) {
+        this.requestParams = requestParams;
+        return requestAdWithCallbacks(invCode, nativeAdCallback, deadlineMillis);
+    }
 
-        while (placementCache != null && !placementCache.isEmpty()) {
-            nativeAd = placementCache.remove(0);
-            long created = nativeAd.getCreated();
-            if (now - created <= CACHE_EXPIRATION) {
-                break;
-            }
-        }
+    protected NativeAd retrieveNativeAd(String invCode, AdSizeBucket sizeBucket) {
+        NativeAdPool pool = getPool(invCode, sizeBucket);
+        NativeAdMetricsListener metrics = getMetrics();
 
-        if (placementCache == null) {
-            placementCache = new ArrayList<>(CACHE_SIZE);
-            nativeAdCache.put(invCode, placementCache);
+        // the sweep normally got there first, this only catches ads expiring since it ran
+        long now = System.currentTimeMillis();
+        int expired = pool.evictExpired(now - config.getStaleGraceMillis());
+        for (int i = 0; i < expired; i++) {
+            metrics.onPoolExpired(invCode);
+        }
+        // an ad within the stale grace window only comes out when no fresh one is left, the refill
+        // below then already counts it as gone
+        NativeAd nativeAd = pool.poll(now);
+
+        if (nativeAd == null) {
+            metrics.onPoolMiss(invCode);
+        } else if (nativeAd.getExpiresAt() <= now) {
+            metrics.onPoolStaleHit(invCode, now - nativeAd.getExpiresAt());
+        } else {
+            metrics.onPoolHit(invCode);
         }
 
-        if (placementCache.size() < CACHE_SIZE && !requestFired && !retryFired) {
+        if (pool.needsRefill(System.currentTimeMillis() + auctionLatencyWindow()) && !retryFired && !paused) {
             cacheHandler.post(getCacheRunnable());
         }
 
         return nativeAd;
     }
 
-    private void fillCache(String invCode) {
-        List<NativeAd> cache;
-        if (!nativeAdCache.containsKey(invCode)) {
-            cache = new ArrayList<>(CACHE_SIZE);
-            nativeAdCache.put(invCode, cache);
-        } else {
-            cache = nativeAdCache.get(invCode);
+    /** An ad taken off the feed before it was shown for good goes back to its pool, unless expired */
+    void returnNativeAd(String invCode, NativeAd nativeAd) {
+        if (!nativeAd.isExpired(System.currentTimeMillis())) {
+            getPool(invCode, nativeAd.getSizeBucket()).add(nativeAd);
         }
-        if (cache.size() < CACHE_SIZE) {
-            requestFired = true;
-            requestAd(invCode);
+    }
+
+    private NativeAdPool getPool(String invCode, AdSizeBucket sizeBucket) {
+        Map<AdSizeBucket, NativeAdPool> pools = nativeAdPools.get(invCode);
+        if (pools == null) {
+            pools = new HashMap<>();
+            nativeAdPools.put(invCode, pools);
+        }
+        NativeAdPool pool = pools.get(sizeBucket);
+        if (pool == null) {
+            pool = new NativeAdPool(invCode, sizeBucket, config.getMinPoolSize());
+            pools.put(sizeBucket, pool);
         }
+        return pool;
     }
 
-    private void requestAd(final String invCode) {
+    /**
+     * Keeps the pool at least depth ads deep, clamped between the configured minimum pool size and
+     * maximum depth. Extra ads are auctioned right away, in parallel.
+     */
+    void setPoolDepth(String invCode, AdSizeBucket sizeBucket, int depth) {
+        NativeAdPool pool = getPool(invCode, sizeBucket);
+        pool.depth = Math.max(config.getMinPoolSize(), Math.min(depth, config.getMaxPoolDepth()));
+        fillCache(pool);
+    }
 
-        if (!nativeAdCache.containsKey(invCode)) {
-            nativeAdCache.put(invCode, new ArrayList<NativeAd>());
+    /** How long an auction takes to come back, the p90 of those seen so far */
+    long auctionLatencyWindow() {
+        long latency = Controller.getInstance(context).getMetrics().auctionLatencyPercentile(90);
+        if (latency == 0) {
+            return DEFAULT_AUCTION_LATENCY;
         }
+        return Math.min(latency, config.getRequestTimeoutMillis());
+    }
 
-        final String requestUrl = generateRequestUrl(invCode, requestParams);
+    private void fillCache(NativeAdPool pool) {
+        if (paused || destroyed || retryFired) {
+            return;
+        }
+        // an ad expiring before a new auction could answer is already as good as gone
+        long validUntil = System.currentTimeMillis() + auctionLatencyWindow();
+        while (pool.needsRefill(validUntil)) {
+            pool.requestsInFlight++;
+            requestAd(pool);
+        }
+    }
 
-        JsonObjectRequest jsonReq = new JsonObjectRequest(requestUrl, null,
-                new Response.Listener<JSONObject>() {
-                    @Override
-                    public void onResponse(JSONObject response) {
-                        VolleyLog.d(TAG, "Response: " + response.toString());
-                        if (response != null) {
-                            NativeAd nativeAd = parseNativeAd(response);
-                            if (nativeAd != null) {
-                                List<NativeAd> placementCache = nativeAdCache.get(invCode);
-                                placementCache.add(nativeAd);
-                                requestFired = false;
-                                retryReset();
-                            }
-                        }
+    private void sweepPools() {
+        long now = System.currentTimeMillis();
+        NativeAdMetricsListener metrics = getMetrics();
+        for (Map<AdSizeBucket, NativeAdPool> pools: nativeAdPools.values()) {
+            for (NativeAdPool pool: pools.values()) {
+                int expired = pool.evictExpired(now - config.getStaleGraceMillis());
+                for (int i = 0; i < expired; i++) {
+                    metrics.onPoolExpired(pool.invCode);
+                }
+            }
+        }
+        fillCaches();
+        scheduleSweep();
+    }
+
+    // wakes up when the next ad is due a replacement auction, or failing that when it expires, and
+    // for an ad already expired when its stale grace runs out
+    private void scheduleSweep() {
+        if (paused || destroyed) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long lead = auctionLatencyWindow();
+        long grace = config.getStaleGraceMillis();
+        long next = Long.MAX_VALUE;
+        for (Map<AdSizeBucket, NativeAdPool> pools: nativeAdPools.values()) {
+            for (NativeAdPool pool: pools.values()) {
+                // the pool is in expiry order, only the first stale ad, the first ad still valid and
+                // the first one outside the auction window can come due first
+                long first = pool.nextExpiry();
+                if (first <= now) {
+                    next = Math.min(next, first + grace);
+                }
+                next = Math.min(next, pool.nextExpiryAfter(now));
+                long outside = pool.nextExpiryAfter(now + lead);
+                if (outside != Long.MAX_VALUE) {
+                    next = Math.min(next, outside - lead);
+                }
+            }
+        }
+        Runnable sweep = getSweepRunnable();
+        cacheHandler.removeCallbacks(sweep);
+        if (next != Long.MAX_VALUE) {
+            cacheHandler.postDelayed(sweep, Math.max(next - now, 0));
+        }
+    }
+
+    private void fillCaches() {
+        for (Map<AdSizeBucket, NativeAdPool> pools: nativeAdPools.values()) {
+            for (NativeAdPool pool: pools.values()) {
+                fillCache(pool);
+            }
+        }
+    }
+
+    private void requestAd(final NativeAdPool pool) {
+
+        final String invCode = pool.invCode;
+        final AuctionFanOut[] handle = new AuctionFanOut[1];
+
+        AuctionFanOut fanOut = new AuctionFanOut(cacheHandler, getMetrics(), new AuctionFanOut.Listener() {
+            @Override
+            public void onFill(AuctionResponse auctionResponse, String endpoint, long endpointLatencyMillis,
+                               long latencyMillis) {
+                if (!completeRefill(pool, handle[0])) {
+                    return;
+                }
+                NativeAd nativeAd = toNativeAd(auctionResponse, pool.sizeBucket);
+                onAuctionComplete(invCode, nativeAd, endpoint, endpointLatencyMillis, latencyMillis);
+                pool.add(nativeAd);
+                // the size the pool's slots will ask for on bind
+                Controller controller = Controller.getInstance(context);
+                controller.prefetchImage(controller.sizedImageUrl(nativeAd, pool.sizeBucket));
+                NativeAdTextWarmer.warm(nativeAd, textMetrics.get(nativeAd.getFormat()));
+                scheduleSweep();
+                retryReset();
+            }
+
+            @Override
+            public void onNoFill(JSONObject response, long latencyMillis) {
+                if (!completeRefill(pool, handle[0])) {
+                    return;
+                }
+                onAuctionComplete(invCode, null, null, 0, latencyMillis);
+            }
 
-                        requestFired = false;
-                    }
-                }, new Response.ErrorListener() {
             @Override
-            public void onErrorResponse(VolleyError error) {
-                VolleyLog.d(TAG, "Error: " + error.getMessage());
-                requestFired = false;
-                if (retryIndex >= RETRY_DELAY.length) {
+            public void onError(VolleyError error, long latencyMillis) {
+                if (!completeRefill(pool, handle[0])) {
+                    return;
+                }
+                NativeAdEventLog.record(NativeAdEventLog.ERROR, NativeAdEventLog.errorCode(error), invCode.hashCode());
+                getMetrics().onAuctionError(invCode, latencyMillis);
+                if (retryFired) {
+                    // a parallel auction failed too, one retry covers both
+                    return;
+                }
+                if (retryIndex >= retryDelays.length) {
                     retryReset();
                     return;
                 }
-                cacheHandler.postDelayed(getCacheRunnable(), RETRY_DELAY[retryIndex]);
+                retryFired = true;
+                cacheHandler.postDelayed(getCacheRunnable(), retryDelays[retryIndex]);
                 retryIndex++;
             }
-        }
-        );
+        });
+
+        handle[0] = fanOut;
+        pendingRefills.add(fanOut);
 
-        jsonReq.setRetryPolicy(new DefaultRetryPolicy(5*1000, 0, DefaultRetryPolicy.DEFAULT_BACKOFF_MULT));
-        Controller.getInstance(context).addToRequestQueue(jsonReq);
+        // while the pool still has an ad to serve the refill can wait for the radio
+        startAuction(fanOut, invCode, pool.sizeBucket, config.getRequestTimeoutMillis(), fanOutDeadline(),
+                pool.size() > 0);
+        NativeAdEventLog.record(NativeAdEventLog.REQUEST_SENT, invCode.hashCode(), NativeAdEventLog.KIND_REFILL);
     }
 
-    private void requestAdWithCallbacks(final String invCode, final NativeAdCallback nativeAdCallback) {
+    private NativeAdRequest requestAdWithCallbacks(final String invCode, final NativeAdCallback nativeAdCallback,
+                                                   long deadlineMillis) {
 
-        final String requestUrl = generateRequestUrl(invCode, requestParams);
+        final AdSizeBucket sizeBucket = sizeBucketFor(requestParams);
+        final NativeAdRequest[] handle = new NativeAdRequest[1];
 
-        JsonObjectRequest jsonReq = new JsonObjectRequest(requestUrl, null,
-                new Response.Listener<JSONObject>() {
-                    @Override
-                    public void onResponse(JSONObject response) {
-                        VolleyLog.d(TAG, "Response: " + response.toString());
-                        if (response != null) {
-                            NativeAd nativeAd = parseNativeAd(response);
-                            if (nativeAd != null) {
-                                nativeAdCallback.onSuccess(nativeAd);
-                            } else {
-                                nativeAdCallback.onFailure(response);
-                            }
-                        }
+        AuctionFanOut fanOut = new AuctionFanOut(cacheHandler, getMetrics(), new AuctionFanOut.Listener() {
+            @Override
+            public void onFill(AuctionResponse auctionResponse, String endpoint, long endpointLatencyMillis,
+                               long latencyMillis) {
+                if (!completeRequest(handle[0])) {
+                    return;
+                }
+                NativeAd nativeAd = toNativeAd(auctionResponse, sizeBucket);
+                onAuctionComplete(invCode, nativeAd, endpoint, endpointLatencyMillis, latencyMillis);
+                nativeAdCallback.onSuccess(nativeAd);
+            }
+
+            @Override
+            public void onNoFill(JSONObject response, long latencyMillis) {
+                if (!completeRequest(handle[0])) {
+                    return;
+                }
+                onAuctionComplete(invCode, null, null, 0, latencyMillis);
+                nativeAdCallback.onFailure(response);
+            }
 
-                    }
-                }, new Response.ErrorListener() {
             @Override
-            public void onErrorResponse(VolleyError error) {
-                VolleyLog.d(TAG, "Error: " + error.getMessage());
+            public void onError(VolleyError error, long latencyMillis) {
+                if (!completeRequest(handle[0])) {
+                    return;
+                }
+                NativeAdEventLog.record(NativeAdEventLog.ERROR, NativeAdEventLog.errorCode(error), invCode.hashCode());
+                getMetrics().onAuctionError(invCode, latencyMillis);
                 nativeAdCallback.onError(error);
             }
-        }
-        );
+        });
 
-        jsonReq.setRetryPolicy(new DefaultRetryPolicy(5*1000, 0, DefaultRetryPolicy.DEFAULT_BACKOFF_MULT));
-        Controller.getInstance(context).addToRequestQueue(jsonReq);
-    }
+        final NativeAdRequest nativeAdRequest = new NativeAdRequest(this, fanOut,
+                deadlineMillis > 0 ? System.currentTimeMillis() + deadlineMillis : 0);
+        handle[0] = nativeAdRequest;
 
-    private String generateRequestUrl(String invCode, Map<String, String> userData) {
-        String debugString = "";
-        if (debug) {
-            debugString = "test=true&";
+        if (destroyed) {
+            nativeAdRequest.cancel();
+            return nativeAdRequest;
         }
-        StringBuilder sb = new StringBuilder(BASE_URL + debugString +"inv_code=" + invCode + "&");
-        for (Map.Entry<String, String> entry: userData.entrySet()) {
-            String key = entry.getKey();
-            String value = entry.getValue();
-            sb.append(key);
-            sb.append("=");
-            sb.append(value);
-            sb.append("&");
+
+        if (deadlineMillis > 0) {
+            Runnable deadlineRunnable = new Runnable() {
+                @Override
+                public void run() {
+                    if (!completeRequest(nativeAdRequest)) {
+                        return;
+                    }
+                    nativeAdRequest.abort();
+                    nativeAdCallback.onError(new TimeoutError());
+                }
+            };
+            nativeAdRequest.setDeadlineRunnable(deadlineRunnable);
+            cacheHandler.postDelayed(deadlineRunnable, deadlineMillis);
+        }
+
+        pendingRequests.add(nativeAdRequest);
+        int requestTimeout = config.getRequestTimeoutMillis();
+        int timeout = deadlineMillis > 0 ? (int) Math.min(deadlineMillis, requestTimeout) : requestTimeout;
+        // the fan-out settles a little before the caller's deadline, so the best answer so far still makes it
+        long fanOutDeadline = fanOutDeadline();
+        if (deadlineMillis > 0 && endpoints.size() > 1) {
+            fanOutDeadline = Math.min(fanOutDeadline, deadlineMillis * 9 / 10);
         }
-        return sb.toString();
+        startAuction(fanOut, invCode, sizeBucket, timeout, fanOutDeadline, false);
+        NativeAdEventLog.record(NativeAdEventLog.REQUEST_SENT, invCode.hashCode(), NativeAdEventLog.KIND_CALLBACK);
+        return nativeAdRequest;
     }
 
-    private NativeAd parseNativeAd(JSONObject response) {
-        try {
-            if (response.has("status")) {
-                return null;
-            }
+    private void startAuction(AuctionFanOut fanOut, String invCode, AdSizeBucket sizeBucket, int timeout,
+                              long fanOutDeadline, boolean deferrable) {
+        List<String> urls = new ArrayList<>(endpoints.size());
+        for (String endpoint: endpoints) {
+            urls.add(generateRequestUrl(endpoint, invCode, sizeBucket, requestParams));
+        }
+        fanOut.start(Controller.getInstance(context), invCode, endpoints, urls, timeout, fanOutDeadline,
+                requestTag, deferrable);
+    }
 
-            String advertiser = response.getString("advertiser_name");
-            String clickthroughUrl = response.getString("clickthrough_url");
-            String imageUrl = response.getString("image_url");
-            String caption = response.getString("caption");
-            String heading = response.getString("heading");
+    // a lone endpoint is only bounded by its request timeout
+    private long fanOutDeadline() {
+        return endpoints.size() > 1 ? fanOutDeadline : 0;
+    }
 
-            imageUrl = imageUrl.replace("https", "http"); //sand image server doesn't support https
+    private void onAuctionComplete(String invCode, NativeAd nativeAd, String endpoint, long endpointLatencyMillis,
+                                   long latencyMillis) {
+        NativeAdMetricsListener metrics = getMetrics();
+        metrics.onAuctionComplete(invCode, latencyMillis, nativeAd != null);
+        if (endpoint != null && endpoints.size() > 1) {
+            metrics.onEndpointWon(invCode, endpoint, endpointLatencyMillis);
+        }
+        NativeAdEventLog.record(NativeAdEventLog.RESPONSE_PARSED, invCode.hashCode(), nativeAd != null ? 1 : 0);
+    }
 
-            //TODO fix this? & maybe null check
-            List<String> clickthroughPixels = jsonArrayToList((JSONArray) response.get("clickthrough_pixels"));
-            List<String> impressionPixels = jsonArrayToList((JSONArray) response.get("impression_pixels"));
+    // false once pause or destroy cancelled the refill, its count was reset with the rest
+    private boolean completeRefill(NativeAdPool pool, AuctionFanOut fanOut) {
+        if (!pendingRefills.remove(fanOut)) {
+            return false;
+        }
+        pool.requestsInFlight = Math.max(pool.requestsInFlight - 1, 0);
+        return true;
+    }
 
-            // TODO logo URL
-            NativeAd nativeAd = new NativeAd(context, advertiser, clickthroughUrl, imageUrl, caption,
-                    heading, "http://i.forbesimg.com/media/lists/companies/triplelift_416x416.jpg",
-                    impressionPixels, clickthroughPixels);
+    private boolean completeRequest(NativeAdRequest nativeAdRequest) {
+        if (nativeAdRequest == null || nativeAdRequest.isDone()) {
+            return false;
+        }
+        pendingRequests.remove(nativeAdRequest);
+        if (nativeAdRequest.getDeadlineRunnable() != null) {
+            cacheHandler.removeCallbacks(nativeAdRequest.getDeadlineRunnable());
+        }
+        return nativeAdRequest.complete();
+    }
 
-            return nativeAd;
-        } catch (JSONException e) {
-            VolleyLog.d(TAG, "Error: " + e.getMessage());
+    void onRequestCancelled(NativeAdRequest nativeAdRequest) {
+        pendingRequests.remove(nativeAdRequest);
+        if (nativeAdRequest.getDeadlineRunnable() != null) {
+            cacheHandler.removeCallbacks(nativeAdRequest.getDeadlineRunnable());
         }
-        return null;
     }
 
-    private List jsonArrayToList(JSONArray jsonArray) {
-        ArrayList<String> list = new ArrayList<>();
-        if (jsonArray != null) {
-            int len = jsonArray.length();
-            for (int i=0;i<len;i++){
-                try {
-                    list.add(jsonArray.get(i).toString());
-                } catch (JSONException e) {
-                    e.printStackTrace();
+    /** Pooled ads of the format, and every one pooled from now on, get their copy laid out ahead of bind */
+    void setTextMetrics(String format, NativeAdTextMetrics textMetrics) {
+        this.textMetrics.put(format, textMetrics);
+        for (Map<AdSizeBucket, NativeAdPool> pools: nativeAdPools.values()) {
+            for (NativeAdPool pool: pools.values()) {
+                for (NativeAd nativeAd: pool.nativeAds) {
+                    if (format.equals(nativeAd.getFormat())) {
+                        NativeAdTextWarmer.warm(nativeAd, textMetrics);
+                    }
                 }
             }
         }
-        return list;
+    }
+
+    private String generateRequestUrl(String baseUrl, String invCode, AdSizeBucket sizeBucket,
+                                      Map<String, String> userData) {
+        // every auction of a pool asks for the same size, whatever the slot measured
+        Map<String, String> params = new LinkedHashMap<>(userData);
+        if (!params.containsKey("ip")) {
+            String ip = Controller.getInstance(context).getIpAddress();
+            if (ip != null) {
+                params.put("ip", ip);
+            }
+        }
+        params.put("width", Integer.toString(sizeBucket.getWidth()));
+        params.put("height", Integer.toString(sizeBucket.getHeight()));
+        return AuctionUrlBuilder.build(baseUrl, invCode, params, debug);
+    }
+
+    static AdSizeBucket sizeBucketFor(Map<String, String> requestParams) {
+        return AdSizeBucket.forSize(parseDimension(requestParams.get("width")),
+                parseDimension(requestParams.get("height")));
+    }
+
+    private static int parseDimension(String dimension) {
+        if (dimension == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(dimension);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private NativeAd toNativeAd(AuctionResponse auctionResponse, AdSizeBucket sizeBucket) {
+        long ttl = auctionResponse.getTtlSeconds() > 0
+                ? auctionResponse.getTtlSeconds() * 1000 : config.getDefaultAdTtlMillis();
+
+        return new NativeAd(auctionResponse.getAdvertiserName(),
+                auctionResponse.getClickthroughUrl(), auctionResponse.getImageUrl(),
+                auctionResponse.getCaption(), auctionResponse.getHeading(), auctionResponse.getLogoUrl(),
+                auctionResponse.getImpressionPixels(), auctionResponse.getClickthroughPixels(), ttl, sizeBucket,
+                auctionResponse.getFormat());
     }
 
     private Runnable getCacheRunnable() {
@@ -252,9 +511,7 @@ public class NativeAdController {
                 @Override
                 public void run() {
                     retryFired = false;
-                    for (String invCode: invCodes) {
-                        fillCache(invCode);
-                    }
+                    fillCaches();
                 }
             };
         }
@@ -262,11 +519,97 @@ public class NativeAdController {
         return cacheRunnable;
     }
 
+    private Runnable getSweepRunnable() {
+        if (sweepRunnable == null) {
+            this.sweepRunnable = new Runnable() {
+                @Override
+                public void run() {
+                    sweepPools();
+                }
+            };
+        }
+
+        return sweepRunnable;
+    }
+
+    private NativeAdMetricsListener getMetrics() {
+        return Controller.getInstance(context).getMetrics();
+    }
+
     private void retryReset() {
         retryIndex = 0;
     }
 
+    /** Stops refills and cancels every outstanding request issued by this controller */
+    public void pause() {
+        paused = true;
+        cancelPendingRequests();
+    }
+
+    public void resume() {
+        if (!paused || destroyed) {
+            return;
+        }
+        paused = false;
+        sweepPools();
+    }
+
+    public void destroy() {
+        paused = true;
+        destroyed = true;
+        cancelPendingRequests();
+        nativeAdPools.clear();
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    private void cancelPendingRequests() {
+        cacheHandler.removeCallbacksAndMessages(null);
+        for (NativeAdRequest nativeAdRequest: new ArrayList<>(pendingRequests)) {
+            nativeAdRequest.cancel();
+        }
+        // a refill still held by the batching window never goes out
+        for (AuctionFanOut fanOut: pendingRefills) {
+            fanOut.cancel();
+        }
+        pendingRefills.clear();
+        Controller.getInstance(context).cancelPendingRequests(requestTag);
+        for (Map<AdSizeBucket, NativeAdPool> pools: nativeAdPools.values()) {
+            for (NativeAdPool pool: pools.values()) {
+                pool.requestsInFlight = 0;
+            }
+        }
+        retryFired = false;
+        retryReset();
+    }
+
+    // Points auctions at a local stub server in tests
+    void setBaseUrl(String baseUrl) {
+        setEndpoints(Collections.singletonList(baseUrl));
+    }
+
+    /**
+     * Auction base URLs, every auction goes to all of them at once. With more than one, the best
+     * fill arriving within the fan-out deadline wins and the slower requests are cancelled.
+     */
+    public void setEndpoints(List<String> endpoints) {
+        if (endpoints == null || endpoints.isEmpty()) {
+            throw new IllegalArgumentException("at least one auction endpoint is needed");
+        }
+        this.endpoints = new ArrayList<>(endpoints);
+        for (String endpoint: endpoints) {
+            Controller.getInstance(context).preconnect(endpoint);
+        }
+    }
+
+    public void setFanOutDeadline(int fanOutDeadlineMillis) {
+        this.fanOutDeadline = fanOutDeadlineMillis;
+    }
+
     public void setDebug(boolean debug) {
         this.debug = debug;
+        NativeAdEventLog.setEnabled(debug);
     }
 }
\ No newline at end of file
@@ -0,0 +1,137 @@
+package com.triplelift.sdk;
+
+import android.os.SystemClock;
+
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+
+/**
+ * Fixed-size ring buffer of debug events. Recording stores primitives only, nothing is
+ * allocated or formatted until dump() is called. Disabled unless setDebug() was called.
+ */
+public final class NativeAdEventLog {
+
+    public static final int REQUEST_SENT = 1;
+    public static final int RESPONSE_PARSED = 2;
+    public static final int AD_PLACED = 3;
+    public static final int PIXEL_FIRED = 4;
+    public static final int ERROR = 5;
+
+    // ERROR codes, positive codes are HTTP status codes
+    public static final int ERROR_NETWORK = -1;
+    public static final int ERROR_TIMEOUT = -2;
+    public static final int ERROR_PARSE = -3;
+    public static final int ERROR_BIND = -4;
+
+    // REQUEST_SENT kinds and PIXEL_FIRED kinds
+    public static final int KIND_REFILL = 0;
+    public static final int KIND_CALLBACK = 1;
+    public static final int KIND_IMPRESSION = 0;
+    public static final int KIND_CLICK = 1;
+
+    private static final int CAPACITY = 256;
+
+    private static volatile boolean enabled = false;
+    private static final long[] times = new long[CAPACITY];
+    private static final int[] types = new int[CAPACITY];
+    private static final int[] firstArgs = new int[CAPACITY];
+    private static final int[] secondArgs = new int[CAPACITY];
+    private static int next = 0;
+    private static int size = 0;
+
+    private NativeAdEventLog() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        NativeAdEventLog.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void record(int type, int firstArg, int secondArg) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (NativeAdEventLog.class) {
+            times[next] = SystemClock.elapsedRealtime();
+            types[next] = type;
+            firstArgs[next] = firstArg;
+            secondArgs[next] = secondArg;
+            next = (next + 1) % CAPACITY;
+            if (size < CAPACITY) {
+                size++;
+            }
+        }
+    }
+
+    public static synchronized void clear() {
+        next = 0;
+        size = 0;
+    }
+
+    /** Oldest event first, one per line */
+    public static synchronized String dump() {
+        StringBuilder sb = new StringBuilder(size * 48);
+        int start = (next - size + CAPACITY) % CAPACITY;
+        long first = size > 0 ? times[start] : 0;
+        for (int i = 0; i < size; i++) {
+            int index = (start + i) % CAPACITY;
+            sb.append('+').append(times[index] - first).append("ms ");
+            appendEvent(sb, types[index], firstArgs[index], secondArgs[index]);
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void appendEvent(StringBuilder sb, int type, int firstArg, int secondArg) {
+        switch (type) {
+            case REQUEST_SENT:
+                sb.append("REQUEST_SENT inv=").append(Integer.toHexString(firstArg))
+                        .append(secondArg == KIND_CALLBACK ? " callback" : " refill");
+                break;
+            case RESPONSE_PARSED:
+                sb.append("RESPONSE_PARSED inv=").append(Integer.toHexString(firstArg))
+                        .append(secondArg == 1 ? " filled" : " empty");
+                break;
+            case AD_PLACED:
+                sb.append("AD_PLACED position=").append(firstArg).append(" live=").append(secondArg);
+                break;
+            case PIXEL_FIRED:
+                sb.append("PIXEL_FIRED ").append(firstArg == KIND_CLICK ? "click" : "impression")
+                        .append(" count=").append(secondArg);
+                break;
+            case ERROR:
+                sb.append("ERROR ").append(errorName(firstArg)).append(" inv=").append(Integer.toHexString(secondArg));
+                break;
+            default:
+                sb.append("UNKNOWN type=").append(type).append(' ').append(firstArg).append(' ').append(secondArg);
+        }
+    }
+
+    private static String errorName(int code) {
+        switch (code) {
+            case ERROR_NETWORK:
+                return "network";
+            case ERROR_TIMEOUT:
+                return "timeout";
+            case ERROR_PARSE:
+                return "parse";
+            case ERROR_BIND:
+                return "bind";
+            default:
+                return "http=" + code;
+        }
+    }
+
+    static int errorCode(VolleyError error) {
+        if (error instanceof TimeoutError) {
+            return ERROR_TIMEOUT;
+        }
+        if (error != null && error.networkResponse != null) {
+            return error.networkResponse.statusCode;
+        }
+        return ERROR_NETWORK;
+    }
+}
@@ -0,0 +1,93 @@
+package com.triplelift.sdk;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Process;
+import android.widget.ImageView.ScaleType;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes fetched creatives on a pool with a thread per core, rather than one at a time under
+ * Volley's decode lock on its network threads. Bitmaps are subsampled and scaled the way
+ * ImageRequest does it.
+ */
+final class NativeAdImageDecoder {
+
+    private static final int MAX_THREADS = 4;
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
+    private static ThreadPoolExecutor executor;
+
+    private NativeAdImageDecoder() {
+    }
+
+    static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_THREADS));
+            final AtomicInteger count = new AtomicInteger();
+            executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "TripleLiftDecode-" + count.incrementAndGet());
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    /** Null when the data is not an image the platform decodes */
+    static Bitmap decode(byte[] data, int maxWidth, int maxHeight, ScaleType scaleType, Bitmap.Config config) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = config;
+        if (maxWidth == 0 && maxHeight == 0) {
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        int actualWidth = options.outWidth;
+        int actualHeight = options.outHeight;
+        if (actualWidth <= 0 || actualHeight <= 0) {
+            return null;
+        }
+
+        int mode = mode(scaleType);
+        int desiredWidth = ImageSampling.resizedDimension(maxWidth, maxHeight, actualWidth, actualHeight, mode);
+        int desiredHeight = ImageSampling.resizedDimension(maxHeight, maxWidth, actualHeight, actualWidth, mode);
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = ImageSampling.sampleSize(actualWidth, actualHeight, desiredWidth, desiredHeight);
+        Bitmap sampled = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (sampled == null || (sampled.getWidth() <= desiredWidth && sampled.getHeight() <= desiredHeight)) {
+            return sampled;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(sampled, desiredWidth, desiredHeight, true);
+        if (scaled != sampled) {
+            sampled.recycle();
+        }
+        return scaled;
+    }
+
+    private static int mode(ScaleType scaleType) {
+        if (scaleType == ScaleType.FIT_XY) {
+            return ImageSampling.FIT_XY;
+        }
+        if (scaleType == ScaleType.CENTER_CROP) {
+            return ImageSampling.CENTER_CROP;
+        }
+        return ImageSampling.FIT;
+    }
+}
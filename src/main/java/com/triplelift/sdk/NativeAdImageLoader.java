@@ -0,0 +1,239 @@
+package com.triplelift.sdk;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.widget.ImageView.ScaleType;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HttpHeaderParser;
+import com.android.volley.toolbox.ImageLoader;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * ImageLoader that reports request-to-delivery time of every network image load and,
+ * where the platform decodes it, tells the image server WebP is welcome. Loads for bound views
+ * go ahead of other traffic, prefetches behind it unless a bind is waiting on them, and a creative
+ * is prefetched once however often it is asked for. Volley only fetches the bytes, decoding runs
+ * on NativeAdImageDecoder's pool so several creatives coming into view decode side by side.
+ */
+public class NativeAdImageLoader extends ImageLoader {
+
+    private static final Map<String, String> WEBP_HEADERS =
+            Collections.singletonMap("Accept", "image/webp,image/*;q=0.8");
+    // creatives bound or prefetched lately, enough for a few screens of a feed
+    private static final int MAX_SIZED_URLS = 64;
+
+    private final NativeAdMetricsListener metricsListener;
+    // only touched on the main thread, like the rest of ImageLoader
+    private final Map<String, Long> requestStarts;
+    // last sized URL of each creative, so rebinds in the same slot size do not rebuild it
+    private final Map<String, SizedUrl> sizedUrls;
+    // prefetches not finished yet by URL, finished ones are removed from Volley's threads
+    private final ConcurrentMap<String, FetchRequest> prefetches;
+    private final Handler mainHandler;
+    private boolean webpEnabled = Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH;
+
+    public NativeAdImageLoader(RequestQueue queue, ImageCache imageCache,
+                               NativeAdMetricsListener metricsListener) {
+        super(queue, imageCache);
+        this.metricsListener = metricsListener;
+        this.requestStarts = new HashMap<>();
+        this.sizedUrls = new LinkedHashMap<String, SizedUrl>(MAX_SIZED_URLS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SizedUrl> eldest) {
+                return size() > MAX_SIZED_URLS;
+            }
+        };
+        this.prefetches = new ConcurrentHashMap<>();
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        queue.addRequestFinishedListener(new RequestQueue.RequestFinishedListener<Object>() {
+            @Override
+            public void onRequestFinished(Request<Object> request) {
+                prefetches.remove(request.getUrl(), request);
+            }
+        });
+    }
+
+    public void setWebpEnabled(boolean webpEnabled) {
+        // lossy WebP decodes from ICS on
+        this.webpEnabled = webpEnabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH;
+    }
+
+    /** The creative's URL asking the image server for the slot's size, main thread only */
+    String sizedImageUrl(String imageUrl, AdSizeBucket slotBucket) {
+        if (imageUrl == null || slotBucket == null) {
+            return imageUrl;
+        }
+        SizedUrl sized = sizedUrls.get(imageUrl);
+        if (sized == null || sized.bucket != slotBucket) {
+            sized = new SizedUrl(slotBucket, ImageUrls.sized(imageUrl, slotBucket));
+            sizedUrls.put(imageUrl, sized);
+        }
+        return sized.url;
+    }
+
+    private Map<String, String> imageHeaders() {
+        return webpEnabled ? WEBP_HEADERS : Collections.<String, String>emptyMap();
+    }
+
+    // every load through the ImageLoader is for a view being bound, so on screen or about to be
+    @Override
+    protected Request<Bitmap> makeImageRequest(String requestUrl, int maxWidth, int maxHeight,
+                                               ScaleType scaleType, final String cacheKey) {
+        // the creative is on its way already, the bind waits on it in Volley's queue under the same
+        // cache key and reads it from disk once it lands, so only the prefetch has to hurry
+        FetchRequest prefetch = prefetches.get(requestUrl);
+        if (prefetch != null) {
+            prefetch.setPriority(Request.Priority.HIGH);
+        }
+        requestStarts.put(cacheKey, SystemClock.elapsedRealtime());
+        return new FetchedImageRequest(requestUrl, maxWidth, maxHeight, scaleType, cacheKey, imageHeaders());
+    }
+
+    /**
+     * Fetches an image into the HTTP cache without decoding it, at low priority, so the bind that
+     * follows decodes from disk instead of waiting on the network. Null when the image is being
+     * prefetched already.
+     */
+    Request<Void> newPrefetchRequest(String url) {
+        if (prefetches.containsKey(url)) {
+            return null;
+        }
+        FetchRequest request = new FetchRequest(url, Request.Priority.LOW, imageHeaders());
+        prefetches.put(url, request);
+        return request;
+    }
+
+    private void decode(final FetchedImageRequest request, final byte[] data) {
+        NativeAdImageDecoder.getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                // the view was recycled or detached while the decode waited its turn
+                if (request.isCanceled()) {
+                    return;
+                }
+                Bitmap bitmap = null;
+                VolleyError error = null;
+                try {
+                    bitmap = NativeAdImageDecoder.decode(data, request.maxWidth, request.maxHeight,
+                            request.scaleType, Bitmap.Config.RGB_565);
+                } catch (OutOfMemoryError e) {
+                    error = new ParseError(e);
+                }
+                if (bitmap == null && error == null) {
+                    error = new ParseError();
+                }
+                final Bitmap decoded = bitmap;
+                final VolleyError decodeError = error;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (decoded != null) {
+                            onGetImageSuccess(request.cacheKey, decoded);
+                        } else {
+                            onGetImageError(request.cacheKey, decodeError);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    protected void onGetImageSuccess(String cacheKey, Bitmap response) {
+        Long start = requestStarts.remove(cacheKey);
+        if (start != null) {
+            metricsListener.onImageLoaded(SystemClock.elapsedRealtime() - start);
+        }
+        super.onGetImageSuccess(cacheKey, response);
+    }
+
+    @Override
+    protected void onGetImageError(String cacheKey, VolleyError error) {
+        requestStarts.remove(cacheKey);
+        super.onGetImageError(cacheKey, error);
+    }
+
+    private static final class SizedUrl {
+        final AdSizeBucket bucket;
+        final String url;
+
+        SizedUrl(AdSizeBucket bucket, String url) {
+            this.bucket = bucket;
+            this.url = url;
+        }
+    }
+
+    /** Hands the raw bytes back to the main thread instead of decoding on the dispatcher */
+    private class FetchedImageRequest extends Request<Bitmap> {
+
+        final int maxWidth, maxHeight;
+        final ScaleType scaleType;
+        final String cacheKey;
+        private final Map<String, String> headers;
+        // written on a dispatcher thread, read once the response is delivered on the main thread
+        private volatile byte[] data;
+
+        FetchedImageRequest(String url, int maxWidth, int maxHeight, ScaleType scaleType, final String cacheKey,
+                            Map<String, String> headers) {
+            super(Method.GET, url, new Response.ErrorListener() {
+                @Override
+                public void onErrorResponse(VolleyError error) {
+                    onGetImageError(cacheKey, error);
+                }
+            });
+            this.maxWidth = maxWidth;
+            this.maxHeight = maxHeight;
+            this.scaleType = scaleType;
+            this.cacheKey = cacheKey;
+            this.headers = headers;
+        }
+
+        @Override
+        protected Response<Bitmap> parseNetworkResponse(NetworkResponse response) {
+            data = response.data;
+            return Response.success(null, HttpHeaderParser.parseCacheHeaders(response));
+        }
+
+        @Override
+        protected void deliverResponse(Bitmap response) {
+            byte[] fetched = data;
+            data = null;
+            if (fetched != null) {
+                decode(this, fetched);
+            }
+        }
+
+        @Override
+        public Map<String, String> getHeaders() throws AuthFailureError {
+            return headers;
+        }
+
+        @Override
+        public Priority getPriority() {
+            return Priority.HIGH;
+        }
+
+        // ImageLoader cancels the load of a recycled view, main thread only
+        @Override
+        public void cancel() {
+            super.cancel();
+            requestStarts.remove(cacheKey);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.triplelift.sdk;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.webkit.WebSettings;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+/** In-app landing page for clickthroughs, shows the prefetched document when there is one */
+public class NativeAdLandingActivity extends Activity {
+
+    static final String EXTRA_URL = "com.triplelift.sdk.EXTRA_URL";
+
+    private WebView webView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        String url = getIntent().getStringExtra(EXTRA_URL);
+        if (url == null) {
+            finish();
+            return;
+        }
+
+        webView = new WebView(this);
+        WebSettings settings = webView.getSettings();
+        settings.setJavaScriptEnabled(true);
+        settings.setLoadWithOverviewMode(true);
+        settings.setUseWideViewPort(true);
+        webView.setWebViewClient(new WebViewClient() {
+            @Override
+            public boolean shouldOverrideUrlLoading(WebView view, String url) {
+                return false;
+            }
+        });
+        setContentView(webView);
+
+        if (savedInstanceState != null) {
+            webView.restoreState(savedInstanceState);
+            return;
+        }
+        NativeAdClickthrough.Document document =
+                Controller.getInstance(this).getClickthrough().takeDocument(url);
+        if (document != null) {
+            webView.loadDataWithBaseURL(document.baseUrl, document.html, "text/html", document.encoding,
+                    document.baseUrl);
+        } else {
+            webView.loadUrl(url);
+        }
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (webView != null) {
+            webView.saveState(outState);
+        }
+    }
+
+    @Override
+    public void onBackPressed() {
+        if (webView != null && webView.canGoBack()) {
+            webView.goBack();
+            return;
+        }
+        super.onBackPressed();
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (webView != null) {
+            webView.destroy();
+            webView = null;
+        }
+        super.onDestroy();
+    }
+}
@@ -3,6 +3,7 @@ package com.triplelift.sdk;
 public class NativeAdLayout {
 
     private final int brandId, imageId, headerId, captionId;//logo
+    private NativeAdTextMetrics textMetrics;
 
     public NativeAdLayout(int brandId, int imageId,
                           int headerId, int captionId) {
@@ -32,4 +33,13 @@ public class NativeAdLayout {
     public int getCaptionId() {
         return captionId;
     }
+
+    NativeAdTextMetrics getTextMetrics() {
+        return textMetrics;
+    }
+
+    // captured from the first laid out ad view, and again if the views change size or style
+    void setTextMetrics(NativeAdTextMetrics textMetrics) {
+        this.textMetrics = textMetrics;
+    }
 }
@@ -0,0 +1,279 @@
+package com.triplelift.sdk;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** In-memory collector for the ad pipeline, read it with snapshot() */
+public class NativeAdMetrics implements NativeAdMetricsListener {
+
+    private final AtomicLong auctions = new AtomicLong();
+    private final AtomicLong fills = new AtomicLong();
+    private final AtomicLong auctionErrors = new AtomicLong();
+    private final AtomicLong poolHits = new AtomicLong();
+    private final AtomicLong poolStaleHits = new AtomicLong();
+    private final AtomicLong poolMisses = new AtomicLong();
+    private final AtomicLong poolExpirations = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> endpointWins = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> staleHitsByInvCode = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> hitsByInvCode = new ConcurrentHashMap<>();
+    private final LatencyHistogram auctionLatency = new LatencyHistogram(LatencyHistogram.MILLIS_BOUNDS);
+    private final LatencyHistogram parseTime = new LatencyHistogram(LatencyHistogram.MICROS_BOUNDS);
+    private final LatencyHistogram imageLoadTime = new LatencyHistogram(LatencyHistogram.MILLIS_BOUNDS);
+    private final LatencyHistogram bindTime = new LatencyHistogram(LatencyHistogram.MICROS_BOUNDS);
+    private volatile NativeAdMetricsListener listener;
+
+    /** Forwards every event to the given listener as well, pass null to remove it */
+    public void setListener(NativeAdMetricsListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void onAuctionComplete(String invCode, long latencyMillis, boolean filled) {
+        auctions.incrementAndGet();
+        if (filled) {
+            fills.incrementAndGet();
+        }
+        auctionLatency.record(latencyMillis);
+        NativeAdMetricsListener listener = this.listener;
+        if (listener != null) {
+            listener.onAuctionComplete(invCode, latencyMillis, filled);
+        }
+    }
+
+    @Override
+    public void onAuctionError(String invCode, long latencyMillis) {
+        auctions.incrementAndGet();
+        auctionErrors.incrementAndGet();
+        auctionLatency.record(latencyMillis);
+        NativeAdMetricsListener listener = this.listener;
+        if (listener != null) {
+            listener.onAuctionError(invCode, latencyMillis);
+        }
+    }
+
+    @Override
+    public void onEndpointWon(String invCode, String endpoint, long latencyMillis) {
+        increment(endpointWins, endpoint);
+        NativeAdMetricsListener listener = this.listener;
+        if (listener != null) {
+            listener.onEndpointWon(invCode, endpoint, latencyMillis);
+        }
+    }
+
+    @Override
+    public void onParse(long parseNanos) {
+        parseTime.record(parseNanos / 1000);
+        NativeAdMetricsListener listener = this.listener;
+        if (listener != null) {
+            listener.onParse(parseNanos);
+        }
+    }
+
+    @Override
+    public void onPoolHit(String invCode) {
+        poolHits.incrementAndGet();
+        increment(hitsByInvCode, invCode);
+        NativeAdMetricsListener listener = this.listener;
+        if (listener != null) {
+            listener.onPoolHit(invCode);
+        }
+    }
+
+    @Override
+    public void onPoolStaleHit(String invCode, long staleMillis) {
+        poolStaleHits.incrementAndGet();
+        increment(staleHitsByInvCode, invCode);
+        NativeAdMetricsListener listener = this.listener;
+        if (listener != null) {
+            listener.onPoolStaleHit(invCode, staleMillis);
+        }
+    }
+
+    @Override
+    public void onPoolMiss(String invCode) {
+        poolMisses.incrementAndGet();
+        NativeAdMetricsListener listener = this.listener;
+        if (listener != null) {
+            listener.onPoolMiss(invCode);
+        }
+    }
+
+    @Override
+    public void onPoolExpired(String invCode) {
+        poolExpirations.incrementAndGet();
+        NativeAdMetricsListener listener = this.listener;
+        if (listener != null) {
+            listener.onPoolExpired(invCode);
+        }
+    }
+
+    @Override
+    public void onImageLoaded(long latencyMillis) {
+        imageLoadTime.record(latencyMillis);
+        NativeAdMetricsListener listener = this.listener;
+        if (listener != null) {
+            listener.onImageLoaded(latencyMillis);
+        }
+    }
+
+    @Override
+    public void onBind(long bindNanos) {
+        bindTime.record(bindNanos / 1000);
+        NativeAdMetricsListener listener = this.listener;
+        if (listener != null) {
+            listener.onBind(bindNanos);
+        }
+    }
+
+    private static void increment(ConcurrentMap<String, AtomicLong> counts, String key) {
+        AtomicLong count = counts.get(key);
+        if (count == null) {
+            counts.putIfAbsent(key, new AtomicLong());
+            count = counts.get(key);
+        }
+        count.incrementAndGet();
+    }
+
+    private static Map<String, Long> copy(ConcurrentMap<String, AtomicLong> counts) {
+        Map<String, Long> copy = new HashMap<>();
+        for (Map.Entry<String, AtomicLong> count: counts.entrySet()) {
+            copy.put(count.getKey(), count.getValue().get());
+        }
+        return copy;
+    }
+
+    /** Auction latency percentile, worked out again only after a new auction. 0 before any auction */
+    public long auctionLatencyPercentile(double percentile) {
+        return auctionLatency.percentile(percentile);
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    public void reset() {
+        auctions.set(0);
+        fills.set(0);
+        auctionErrors.set(0);
+        poolHits.set(0);
+        poolStaleHits.set(0);
+        poolMisses.set(0);
+        poolExpirations.set(0);
+        endpointWins.clear();
+        staleHitsByInvCode.clear();
+        hitsByInvCode.clear();
+        auctionLatency.reset();
+        parseTime.reset();
+        imageLoadTime.reset();
+        bindTime.reset();
+    }
+
+    public static class Snapshot {
+        private final long auctions, fills, auctionErrors, poolHits, poolStaleHits, poolMisses, poolExpirations;
+        private final Map<String, Long> endpointWins, hitsByInvCode, staleHitsByInvCode;
+        private final LatencyHistogram.Snapshot auctionLatency, parseTime, imageLoadTime, bindTime;
+
+        Snapshot(NativeAdMetrics metrics) {
+            this.auctions = metrics.auctions.get();
+            this.fills = metrics.fills.get();
+            this.auctionErrors = metrics.auctionErrors.get();
+            this.poolHits = metrics.poolHits.get();
+            this.poolStaleHits = metrics.poolStaleHits.get();
+            this.poolMisses = metrics.poolMisses.get();
+            this.poolExpirations = metrics.poolExpirations.get();
+            this.endpointWins = copy(metrics.endpointWins);
+            this.hitsByInvCode = copy(metrics.hitsByInvCode);
+            this.staleHitsByInvCode = copy(metrics.staleHitsByInvCode);
+            this.auctionLatency = metrics.auctionLatency.snapshot();
+            this.parseTime = metrics.parseTime.snapshot();
+            this.imageLoadTime = metrics.imageLoadTime.snapshot();
+            this.bindTime = metrics.bindTime.snapshot();
+        }
+
+        public long getAuctions() {
+            return auctions;
+        }
+
+        public long getFills() {
+            return fills;
+        }
+
+        public long getAuctionErrors() {
+            return auctionErrors;
+        }
+
+        public double getFillRate() {
+            return auctions == 0 ? 0 : (double) fills / auctions;
+        }
+
+        public long getPoolHits() {
+            return poolHits;
+        }
+
+        /** Expired ads served within the stale grace window, not counted as pool hits */
+        public long getPoolStaleHits() {
+            return poolStaleHits;
+        }
+
+        /** Fresh pool hits per inventory code */
+        public Map<String, Long> getPoolHitsByInvCode() {
+            return hitsByInvCode;
+        }
+
+        /** Stale grace serves per inventory code */
+        public Map<String, Long> getPoolStaleHitsByInvCode() {
+            return staleHitsByInvCode;
+        }
+
+        public long getPoolMisses() {
+            return poolMisses;
+        }
+
+        public long getPoolExpirations() {
+            return poolExpirations;
+        }
+
+        /** Fresh hits over every pool lookup, stale serves included */
+        public double getPoolHitRatio() {
+            long lookups = poolHits + poolStaleHits + poolMisses;
+            return lookups == 0 ? 0 : (double) poolHits / lookups;
+        }
+
+        /** Fan-out auctions won per endpoint */
+        public Map<String, Long> getEndpointWins() {
+            return endpointWins;
+        }
+
+        /** Milliseconds */
+        public LatencyHistogram.Snapshot getAuctionLatency() {
+            return auctionLatency;
+        }
+
+        /** Microseconds */
+        public LatencyHistogram.Snapshot getParseTime() {
+            return parseTime;
+        }
+
+        /** Milliseconds */
+        public LatencyHistogram.Snapshot getImageLoadTime() {
+            return imageLoadTime;
+        }
+
+        /** Microseconds */
+        public LatencyHistogram.Snapshot getBindTime() {
+            return bindTime;
+        }
+
+        @Override
+        public String toString() {
+            return "auctions=" + auctions + " fills=" + fills + " errors=" + auctionErrors
+                    + " poolHits=" + poolHits + " poolStaleHits=" + poolStaleHits + " poolMisses=" + poolMisses + " poolExpirations=" + poolExpirations
+                    + (endpointWins.isEmpty() ? "" : " endpointWins=" + endpointWins)
+                    + " auctionLatencyMs[" + auctionLatency + "] parseTimeUs[" + parseTime + "]"
+                    + " imageLoadTimeMs[" + imageLoadTime + "] bindTimeUs[" + bindTime + "]";
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.triplelift.sdk;
+
+/** Callbacks are made on the main thread and should return quickly */
+public interface NativeAdMetricsListener {
+    void onAuctionComplete(String invCode, long latencyMillis, boolean filled);
+    void onAuctionError(String invCode, long latencyMillis);
+    /** Only reported when auctions fan out to several endpoints */
+    void onEndpointWon(String invCode, String endpoint, long latencyMillis);
+    void onParse(long parseNanos);
+    void onPoolHit(String invCode);
+    /** An expired ad was served within the stale grace window, staleMillis past its expiry */
+    void onPoolStaleHit(String invCode, long staleMillis);
+    void onPoolMiss(String invCode);
+    void onPoolExpired(String invCode);
+    void onImageLoaded(long latencyMillis);
+    void onBind(long bindNanos);
+}
@@ -0,0 +1,83 @@
+package com.triplelift.sdk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ads fetched for one inventory code and size bucket, ordered by expiry so stale ads are always
+ * at the front and the ad served is the one closest to expiring.
+ */
+class NativeAdPool {
+
+    final String invCode;
+    final AdSizeBucket sizeBucket;
+    final List<NativeAd> nativeAds;
+    int requestsInFlight = 0;
+    // ads the pool should hold, raised ahead of fast scrolls
+    int depth;
+
+    NativeAdPool(String invCode, AdSizeBucket sizeBucket, int capacity) {
+        this.invCode = invCode;
+        this.sizeBucket = sizeBucket;
+        this.nativeAds = new ArrayList<>(capacity);
+        this.depth = capacity;
+    }
+
+    int size() {
+        return nativeAds.size();
+    }
+
+    void add(NativeAd nativeAd) {
+        nativeAds.add(expiringBefore(nativeAd.getExpiresAt() + 1), nativeAd);
+    }
+
+    /** Drops the ads expired at now, returns how many */
+    int evictExpired(long now) {
+        int expired = expiringBefore(now + 1);
+        nativeAds.subList(0, expired).clear();
+        return expired;
+    }
+
+    /**
+     * Ad closest to expiry that is still valid at now or, when there is none, the last one to have
+     * expired. Ads past the stale grace window must have been evicted.
+     */
+    NativeAd poll(long now) {
+        int expired = expiringBefore(now + 1);
+        if (expired < nativeAds.size()) {
+            return nativeAds.remove(expired);
+        }
+        return expired > 0 ? nativeAds.remove(expired - 1) : null;
+    }
+
+    /** Expiry of the first ad, Long.MAX_VALUE when empty */
+    long nextExpiry() {
+        return nativeAds.isEmpty() ? Long.MAX_VALUE : nativeAds.get(0).getExpiresAt();
+    }
+
+    /** Expiry of the first ad expiring after time, Long.MAX_VALUE when there is none */
+    long nextExpiryAfter(long time) {
+        int index = expiringBefore(time + 1);
+        return index < nativeAds.size() ? nativeAds.get(index).getExpiresAt() : Long.MAX_VALUE;
+    }
+
+    /** Whether the ads still valid at validUntil plus those being auctioned fall short of depth */
+    boolean needsRefill(long validUntil) {
+        return nativeAds.size() - expiringBefore(validUntil + 1) + requestsInFlight < depth;
+    }
+
+    // number of ads expiring before time, the index the first ad expiring at or after it would have
+    private int expiringBefore(long time) {
+        int low = 0;
+        int high = nativeAds.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (nativeAds.get(mid).getExpiresAt() < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
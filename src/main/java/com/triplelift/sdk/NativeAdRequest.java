@@ -0,0 +1,60 @@
+package com.triplelift.sdk;
+
+/** Handle to a single in-flight ad request, returned by requestAd */
+public class NativeAdRequest {
+
+    private final NativeAdController controller;
+    private final AuctionFanOut auction;
+    private final long deadline;
+    private Runnable deadlineRunnable;
+    private boolean done = false;
+    private boolean cancelled = false;
+
+    NativeAdRequest(NativeAdController controller, AuctionFanOut auction, long deadline) {
+        this.controller = controller;
+        this.auction = auction;
+        this.deadline = deadline;
+    }
+
+    public void cancel() {
+        if (done) {
+            return;
+        }
+        cancelled = true;
+        done = true;
+        auction.cancel();
+        controller.onRequestCancelled(this);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    boolean complete() {
+        if (done) {
+            return false;
+        }
+        done = true;
+        return true;
+    }
+
+    void abort() {
+        auction.cancel();
+    }
+
+    Runnable getDeadlineRunnable() {
+        return deadlineRunnable;
+    }
+
+    void setDeadlineRunnable(Runnable deadlineRunnable) {
+        this.deadlineRunnable = deadlineRunnable;
+    }
+}
@@ -0,0 +1,77 @@
+package com.triplelift.sdk;
+
+import android.view.ViewTreeObserver;
+import android.widget.TextView;
+
+import com.android.volley.toolbox.NetworkImageView;
+
+import java.util.Map;
+
+/**
+ * The size bucket an ad unit or adapter auctions for, kept in step with the slots as they are
+ * measured, along with the text metrics of their layouts. Main thread only.
+ */
+class NativeAdSlotSize {
+
+    private final NativeAdController nativeAdController;
+    private final Map<String, String> userData;
+    private AdSizeBucket sizeBucket;
+
+    NativeAdSlotSize(NativeAdController nativeAdController, Map<String, String> userData) {
+        this.nativeAdController = nativeAdController;
+        this.userData = userData;
+    }
+
+    AdSizeBucket getSizeBucket() {
+        return sizeBucket;
+    }
+
+    /** Rounded to an AdSizeBucket, ads are pooled and auctioned per bucket */
+    void setDimensions(Integer width, Integer height) {
+        int bucketWidth = width != null ? width : (sizeBucket != null ? sizeBucket.getWidth() : 0);
+        int bucketHeight = height != null ? height : (sizeBucket != null ? sizeBucket.getHeight() : 0);
+        this.sizeBucket = AdSizeBucket.forSize(bucketWidth, bucketHeight);
+        this.userData.put("width", Integer.toString(sizeBucket.getWidth()));
+        this.userData.put("height", Integer.toString(sizeBucket.getHeight()));
+    }
+
+    // a recycled view already knows its size, a fresh one uses the last measured bucket
+    AdSizeBucket slotBucket(NetworkImageView mainImage) {
+        int width = mainImage.getMeasuredWidth();
+        int height = mainImage.getMeasuredHeight();
+        if (width > 0 && height > 0) {
+            return AdSizeBucket.forSize(width, height);
+        }
+        return sizeBucket;
+    }
+
+    void track(final NetworkImageView mainImage, final TextView header, final TextView caption, final TextView brand,
+               final NativeAdLayout layout, final String format) {
+        // once per inflated view, only a change of bucket touches the request params
+        mainImage.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    public boolean onPreDraw() {
+                        int width = mainImage.getMeasuredWidth();
+                        int height = mainImage.getMeasuredHeight();
+                        if (width > 0 && height > 0 && AdSizeBucket.forSize(width, height) != sizeBucket) {
+                            setDimensions(width, height);
+                        }
+                        trackTextMetrics(header, caption, brand, layout, format);
+                        return true;
+                    }
+                });
+    }
+
+    private void trackTextMetrics(TextView header, TextView caption, TextView brand, NativeAdLayout layout,
+                                  String format) {
+        NativeAdTextMetrics textMetrics = layout.getTextMetrics();
+        if (textMetrics != null && textMetrics.matches(header, caption, brand)) {
+            return;
+        }
+        textMetrics = NativeAdTextMetrics.capture(header, caption, brand);
+        if (textMetrics != null) {
+            layout.setTextMetrics(textMetrics);
+            nativeAdController.setTextMetrics(format, textMetrics);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.triplelift.sdk;
+
+import android.os.Build;
+import android.text.TextPaint;
+import android.widget.TextView;
+
+/**
+ * Paint and wrap width of the laid out ad TextViews, copied so ad copy can be measured off the
+ * main thread exactly the way those views will measure it.
+ */
+class NativeAdTextMetrics {
+
+    static class TextSpec {
+        final TextPaint paint;
+        final int width;
+        final float spacingMult;
+        final float spacingAdd;
+        final boolean includePad;
+
+        TextSpec(TextView textView) {
+            this.paint = new TextPaint(textView.getPaint());
+            this.width = textView.getWidth() - textView.getCompoundPaddingLeft()
+                    - textView.getCompoundPaddingRight();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                this.spacingMult = textView.getLineSpacingMultiplier();
+                this.spacingAdd = textView.getLineSpacingExtra();
+                this.includePad = textView.getIncludeFontPadding();
+            } else {
+                this.spacingMult = 1.0f;
+                this.spacingAdd = 0.0f;
+                this.includePad = true;
+            }
+        }
+
+        boolean matches(TextView textView) {
+            return width == textView.getWidth() - textView.getCompoundPaddingLeft()
+                    - textView.getCompoundPaddingRight()
+                    && paint.getTextSize() == textView.getPaint().getTextSize()
+                    && paint.getTypeface() == textView.getPaint().getTypeface();
+        }
+    }
+
+    final TextSpec header;
+    final TextSpec caption;
+    final TextSpec brand;
+
+    private NativeAdTextMetrics(TextView header, TextView caption, TextView brand) {
+        this.header = new TextSpec(header);
+        this.caption = new TextSpec(caption);
+        this.brand = new TextSpec(brand);
+    }
+
+    /** Null until all three views have been laid out */
+    static NativeAdTextMetrics capture(TextView header, TextView caption, TextView brand) {
+        if (header == null || caption == null || brand == null
+                || header.getWidth() == 0 || caption.getWidth() == 0 || brand.getWidth() == 0) {
+            return null;
+        }
+        return new NativeAdTextMetrics(header, caption, brand);
+    }
+
+    boolean matches(TextView header, TextView caption, TextView brand) {
+        return this.header.matches(header) && this.caption.matches(caption) && this.brand.matches(brand);
+    }
+}
@@ -0,0 +1,58 @@
+package com.triplelift.sdk;
+
+import android.graphics.Canvas;
+import android.graphics.Picture;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.text.Layout;
+import android.text.StaticLayout;
+
+/**
+ * Lays out and draws ad copy on a background thread as ads enter the pool. The platform caches
+ * measured words and rasterized glyphs per paint, so the TextViews laying out the same copy on
+ * bind find the work already done.
+ */
+final class NativeAdTextWarmer {
+
+    private static Handler handler;
+
+    private NativeAdTextWarmer() {
+    }
+
+    static void warm(final NativeAd nativeAd, final NativeAdTextMetrics metrics) {
+        if (nativeAd == null || metrics == null) {
+            return;
+        }
+        getHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                // the paints are copies owned by the metrics, only this thread draws with them
+                Picture picture = new Picture();
+                warm(picture, nativeAd.getHeader(), metrics.header);
+                warm(picture, nativeAd.getCaption(), metrics.caption);
+                warm(picture, nativeAd.getSponsoredBy(), metrics.brand);
+            }
+        });
+    }
+
+    private static void warm(Picture picture, CharSequence text, NativeAdTextMetrics.TextSpec spec) {
+        if (text == null || spec.width <= 0) {
+            return;
+        }
+        StaticLayout layout = new StaticLayout(text, spec.paint, spec.width, Layout.Alignment.ALIGN_NORMAL,
+                spec.spacingMult, spec.spacingAdd, spec.includePad);
+        Canvas canvas = picture.beginRecording(layout.getWidth(), layout.getHeight());
+        layout.draw(canvas);
+        picture.endRecording();
+    }
+
+    private static synchronized Handler getHandler() {
+        if (handler == null) {
+            HandlerThread thread = new HandlerThread("TripleLiftTextWarmer", Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
+        return handler;
+    }
+}
@@ -1,17 +1,16 @@
 package com.triplelift.sdk;
 
 import android.content.Context;
-import android.content.Intent;
-import android.net.Uri;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.view.ViewTreeObserver;
 import android.widget.TextView;
 
 import com.android.volley.toolbox.ImageLoader;
 import com.android.volley.toolbox.NetworkImageView;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -23,6 +22,7 @@ public class NativeAdUnit {
     private NativeAdLayout nativeAdLayout;
     private int nativeAdLayoutId;
     private double aspectRatio;
+    private NativeAdSlotSize slotSize;
     private String invCode;
     private Map<String, String> userData;
     private NativeDisplayAdViewHolder viewHolder;
@@ -34,6 +34,17 @@ public class NativeAdUnit {
         TextView caption;
         NetworkImageView mainImage;
         NetworkImageView logo;
+        private String sponsoredByBrand;
+        private String sponsoredBy;
+
+        // the brand line of the ad last bound, a rebind of the same brand builds no string
+        String sponsoredBy(NativeAd nativeAd) {
+            if (sponsoredBy == null || !TextUtils.equals(sponsoredByBrand, nativeAd.getBrandName())) {
+                sponsoredByBrand = nativeAd.getBrandName();
+                sponsoredBy = nativeAd.getSponsoredBy();
+            }
+            return sponsoredBy;
+        }
     }
 
     public NativeAdUnit(Context context, String invCode, int width, int height) {
@@ -50,44 +61,42 @@ public class NativeAdUnit {
         this.aspectRatio = DEFAULT_AR;
         this.nativeAdController = new NativeAdController(context);
         this.nativeAdController.registerInvCode(invCode);
+        this.slotSize = new NativeAdSlotSize(nativeAdController, userData);
         setImplicitUserData();
     }
 
+    /** Overrides the SDK-wide NativeAdConfig for this unit, set it before loading ads */
+    public void setConfig(NativeAdConfig config) {
+        nativeAdController.setConfig(config);
+    }
+
     private void setImplicitUserData() {
         int deviceWidth = Utils.getWidth(context);
         int adjustedHeight = (int) Math.round(deviceWidth / aspectRatio);
-        this.userData.put("width", Integer.toString(deviceWidth));
-        this.userData.put("height", Integer.toString(adjustedHeight));
-        try {
-            String ip = Utils.getIpAddress();
-            this.userData.put("ip", ip);
-        } catch (Exception e) {
-            //DO NOTHING
-        }
+        setDimensions(deviceWidth, adjustedHeight);
+        // the IP is looked up off the main thread by the Controller and added to each auction
     }
 
+    /** Rounded to an AdSizeBucket, ads are pooled and auctioned per bucket */
     public void setDimensions(Integer width, Integer height) {
-
-        if (width != null) {
-            this.userData.put("width", Integer.toString(width));
-        }
-
-        if (height != null) {
-            this.userData.put("height", Integer.toString(height));
-        }
+        slotSize.setDimensions(width, height);
     }
 
     public NativeAd getNativeAdRaw(String invCode) {
-        NativeAd nativeAd = nativeAdController.retrieveNativeAd(invCode);
+        NativeAd nativeAd = nativeAdController.retrieveNativeAd(invCode, slotSize.getSizeBucket());
         return nativeAd;
     }
 
     public void requestAds() {
-        nativeAdController.requestAds(invCode, userData);
+        nativeAdController.requestAds(invCode, slotSize.getSizeBucket(), userData);
+    }
+
+    public NativeAdRequest requestAd(NativeAdCallback nativeAdCallback) {
+        return nativeAdController.requestAd(invCode, userData, nativeAdCallback);
     }
 
-    public void requestAd(NativeAdCallback nativeAdCallback) {
-        nativeAdController.requestAd(invCode, userData, nativeAdCallback);
+    public NativeAdRequest requestAd(NativeAdCallback nativeAdCallback, long deadlineMillis) {
+        return nativeAdController.requestAd(invCode, userData, nativeAdCallback, deadlineMillis);
     }
 
     public void getNativeAd(ViewGroup parent) {
@@ -100,6 +109,8 @@ public class NativeAdUnit {
             return null;
         }
 
+        long bindStart = System.nanoTime();
+
         if (view == null) {
             view = LayoutInflater.from(context).inflate(nativeAdLayoutId, parent, false);
             viewHolder = new NativeDisplayAdViewHolder();
@@ -109,6 +120,8 @@ public class NativeAdUnit {
             viewHolder.mainImage = (NetworkImageView) view.findViewById(nativeAdLayout.getImageId());
             //viewHolder.logo = (NetworkImageView) view.findViewById(nativeAdLayout.getLogoId());
             view.setTag(viewHolder);
+            slotSize.track(viewHolder.mainImage, viewHolder.header, viewHolder.caption, viewHolder.brand,
+                    nativeAdLayout, NativeAd.DEFAULT_FORMAT);
         } else {
             if (view.getTag() == null) {
                 return null;
@@ -116,49 +129,38 @@ public class NativeAdUnit {
             viewHolder = (NativeDisplayAdViewHolder) view.getTag();
         }
 
-        final ImageLoader imageLoader = Controller.getInstance(context).getImageLoader();
-
-        viewHolder.mainImage.getViewTreeObserver().addOnPreDrawListener(
-                new ViewTreeObserver.OnPreDrawListener() {
-                    public boolean onPreDraw() {
-                        int width = viewHolder.mainImage.getMeasuredWidth();
-                        int height = viewHolder.mainImage.getMeasuredHeight();
-                        setDimensions(width, height);
-//                        viewHolder.mainImage.setImageUrl(Utils.setWidthAndHeight(nativeAd.getImageUrl(), width, height), imageLoader);
-                        return true;
-                    }
-                });
+        final Controller controller = Controller.getInstance(context);
+        final ImageLoader imageLoader = controller.getImageLoader();
 
         try {
 
-            viewHolder.brand.setText("Sponsored by " + nativeAd.getBrandName());
+            viewHolder.brand.setText(viewHolder.sponsoredBy(nativeAd));
             viewHolder.header.setText(nativeAd.getHeader());
             viewHolder.caption.setText(nativeAd.getCaption());
-            viewHolder.mainImage.setImageUrl(nativeAd.getImageUrl(), imageLoader);
+            viewHolder.mainImage.setImageUrl(controller.sizedImageUrl(nativeAd, slotSize.slotBucket(viewHolder.mainImage)), imageLoader);
             //viewHolder.logo.setImageUrl(nativeAd.getLogoUrl(), imageLoader);
 
+            final NativeAdClickthrough clickthrough = controller.getClickthrough();
             view.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    Intent browserIntent =
-                            new Intent(Intent.ACTION_VIEW, Uri.parse(nativeAd.getClickthroughUrl()));
-                    browserIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                    nativeAd.fireClick();
-                    context.startActivity(browserIntent);
+                    clickthrough.open(context, controller, nativeAd);
                 }
             });
 
-            nativeAd.fireImpression();
+            nativeAd.fireImpression(controller);
+            clickthrough.prewarm(nativeAd.getClickthroughUrl());
 
         } catch (Exception exception) {
-            System.out.println(exception.getMessage());
+            NativeAdEventLog.record(NativeAdEventLog.ERROR, NativeAdEventLog.ERROR_BIND, invCode.hashCode());
             return null;
         }
+        controller.getMetrics().onBind(System.nanoTime() - bindStart);
         return view;
     }
 
     public View getNativeAd(View view, ViewGroup parent) {
-        final NativeAd nativeAd = nativeAdController.retrieveNativeAd(invCode);
+        final NativeAd nativeAd = nativeAdController.retrieveNativeAd(invCode, slotSize.getSizeBucket());
         return getNativeAd(view, parent, nativeAd);
     }
 
@@ -167,15 +169,33 @@ public class NativeAdUnit {
     }
 
     public boolean adIsAvailable() {
-        final NativeAd nativeAd = nativeAdController.retrieveNativeAd(invCode);
+        final NativeAd nativeAd = nativeAdController.retrieveNativeAd(invCode, slotSize.getSizeBucket());
         if (nativeAd == null) {
             return false;
         }
         return true;
     }
 
+    /** Sends every auction to all of these base URLs at once, the best fill within the deadline wins */
+    public void setAuctionEndpoints(List<String> baseUrls, int fanOutDeadlineMillis) {
+        nativeAdController.setEndpoints(baseUrls);
+        nativeAdController.setFanOutDeadline(fanOutDeadlineMillis);
+    }
+
     public void setDebug() {
         nativeAdController.setDebug(true);
     }
 
+    public void pause() {
+        nativeAdController.pause();
+    }
+
+    public void resume() {
+        nativeAdController.resume();
+    }
+
+    public void destroy() {
+        nativeAdController.destroy();
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,99 @@
+package com.triplelift.sdk;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.List;
+
+/**
+ * Batches deferrable traffic (pixels, background refills) on cellular so it shares radio wakeups
+ * with auctions, see BatchingWindow. Off by default, on Wi-Fi everything goes out right away.
+ * Main thread only.
+ */
+class NetworkScheduler {
+
+    static final long MAX_DEFER = 10 * 1000;
+    // a conservative 3G/LTE high power tail
+    static final long RADIO_TAIL = 5 * 1000;
+
+    private final Context context;
+    private final Handler handler;
+    private final BatchingWindow<Runnable> window;
+    private final Runnable flushRunnable;
+    private boolean enabled = false;
+
+    NetworkScheduler(Context context) {
+        this.context = context;
+        this.handler = new Handler(Looper.getMainLooper());
+        this.window = new BatchingWindow<>(new Clock() {
+            @Override
+            public long now() {
+                return SystemClock.elapsedRealtime();
+            }
+        }, MAX_DEFER, RADIO_TAIL);
+        this.flushRunnable = new Runnable() {
+            @Override
+            public void run() {
+                send(window.poll());
+                schedule();
+            }
+        };
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            // whatever was held goes out now
+            send(window.onUrgent());
+            handler.removeCallbacks(flushRunnable);
+        }
+    }
+
+    /** Latency critical, goes out now and takes the deferred traffic with it */
+    void sendNow(Runnable transmission) {
+        transmission.run();
+        if (enabled) {
+            send(window.onUrgent());
+            schedule();
+        }
+    }
+
+    /** Goes out with the next radio wakeup, at most MAX_DEFER from now */
+    void defer(Runnable transmission) {
+        if (!enabled || !isOnCellular()) {
+            transmission.run();
+            return;
+        }
+        send(window.defer(transmission));
+        schedule();
+    }
+
+    int getWakeups() {
+        return window.getWakeups();
+    }
+
+    private void schedule() {
+        handler.removeCallbacks(flushRunnable);
+        long flushAt = window.getFlushAt();
+        if (flushAt != Long.MAX_VALUE) {
+            handler.postDelayed(flushRunnable, Math.max(flushAt - SystemClock.elapsedRealtime(), 0));
+        }
+    }
+
+    private boolean isOnCellular() {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.getType() == ConnectivityManager.TYPE_MOBILE;
+    }
+
+    private static void send(List<Runnable> transmissions) {
+        for (int i = 0; i < transmissions.size(); i++) {
+            transmissions.get(i).run();
+        }
+    }
+}
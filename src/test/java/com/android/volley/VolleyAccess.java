@@ -0,0 +1,25 @@
+package com.android.volley;
+
+/**
+ * The steps of a request only Volley's own dispatchers may take, for transports standing in for
+ * the network in tests.
+ */
+public final class VolleyAccess {
+
+    private VolleyAccess() {
+    }
+
+    /** What NetworkDispatcher does with a response before handing it to the delivery */
+    public static <T> Response<T> parse(Request<T> request, NetworkResponse response) {
+        return request.parseNetworkResponse(response);
+    }
+
+    public static VolleyError parseError(Request<?> request, VolleyError error) {
+        return request.parseNetworkError(error);
+    }
+
+    /** Drops a request cancelled before it was answered */
+    public static void finish(Request<?> request, String tag) {
+        request.finish(tag);
+    }
+}
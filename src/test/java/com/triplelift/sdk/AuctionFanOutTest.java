@@ -0,0 +1,125 @@
+package com.triplelift.sdk;
+
+import com.android.volley.VolleyError;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class AuctionFanOutTest {
+
+    private StubAdServer server;
+    private NativeAdController controller;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubAdServer();
+        server.start();
+        controller = new NativeAdController(RuntimeEnvironment.application);
+        ShadowLooper.pauseMainLooper();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        controller.destroy();
+        ShadowLooper.unPauseMainLooper();
+        server.shutdown();
+    }
+
+    @Test
+    public void bestFillBeforeTheDeadlineWinsAndSlowEndpointsAreCutOff() throws Exception {
+        StubAdServer.Endpoint cheap = server.endpoint("cheap").setPrice(1.0);
+        StubAdServer.Endpoint best = server.endpoint("best").setPrice(3.0).setDelayMillis(50);
+        StubAdServer.Endpoint empty = server.endpoint("empty").setFill(false);
+        controller.setEndpoints(Arrays.asList(cheap.getAuctionUrl(), best.getAuctionUrl(), empty.getAuctionUrl()));
+        controller.setFanOutDeadline(2000);
+
+        Result result = auction();
+        assertNotNull("no fill within the deadline", result.nativeAd);
+        assertEquals("Stub Brand best-1", result.nativeAd.getBrandName());
+
+        // a richer endpoint that answers too late loses to the fill already in hand
+        StubAdServer.Endpoint slow = server.endpoint("slow").setPrice(10.0).setDelayMillis(5000);
+        controller.setEndpoints(Arrays.asList(cheap.getAuctionUrl(), slow.getAuctionUrl()));
+        controller.setFanOutDeadline(300);
+
+        result = auction();
+        assertNotNull("no fill within the deadline", result.nativeAd);
+        assertEquals("Stub Brand cheap-2", result.nativeAd.getBrandName());
+        assertTrue("settled after " + result.virtualMillis + "ms", result.virtualMillis < 1000);
+
+        Long wins = Controller.getInstance(RuntimeEnvironment.application).getMetrics().snapshot()
+                .getEndpointWins().get(cheap.getAuctionUrl());
+        assertEquals(Long.valueOf(1), wins);
+    }
+
+    @Test
+    public void binaryAndJsonAnswersFillAlike() throws Exception {
+        controller.setEndpoints(Arrays.asList(server.getAuctionUrl()));
+
+        Result binary = auction();
+        assertNotNull("no fill over the binary codec", binary.nativeAd);
+        assertEquals(1, server.getBinaryAuctionCount());
+
+        server.setBinary(false);
+        Result json = auction();
+        assertNotNull("no fill over JSON", json.nativeAd);
+        assertEquals(1, server.getBinaryAuctionCount());
+
+        assertEquals("Stub heading 1", binary.nativeAd.getHeader());
+        assertEquals("Stub heading 2", json.nativeAd.getHeader());
+        assertEquals(binary.nativeAd.getImpressionPixels().get(0).replace("a=1", "a=2"),
+                json.nativeAd.getImpressionPixels().get(0));
+    }
+
+    private Result auction() throws InterruptedException {
+        final Result result = new Result();
+        controller.requestAd("fan_out_inv_code", new HashMap<String, String>(), new NativeAdCallback() {
+            @Override
+            public void onSuccess(NativeAd nativeAd) {
+                result.nativeAd = nativeAd;
+                result.done = true;
+            }
+
+            @Override
+            public void onFailure(JSONObject jsonObject) {
+                result.done = true;
+            }
+
+            @Override
+            public void onError(VolleyError error) {
+                result.done = true;
+            }
+        });
+
+        // deadlines run on the paused main looper, keep its clock roughly in step with the network
+        long giveUp = System.currentTimeMillis() + 5000;
+        while (!result.done && System.currentTimeMillis() < giveUp) {
+            Thread.sleep(10);
+            ShadowLooper.idleMainLooper(10);
+            result.virtualMillis += 10;
+        }
+        return result;
+    }
+
+    private static class Result {
+        NativeAd nativeAd;
+        boolean done;
+        long virtualMillis;
+    }
+}
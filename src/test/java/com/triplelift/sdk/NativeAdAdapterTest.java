@@ -0,0 +1,196 @@
+package com.triplelift.sdk;
+
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import com.android.volley.toolbox.NetworkImageView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class NativeAdAdapterTest {
+
+    private static final String INV_CODE = "adapter_inv_code";
+    private static final AdSizeBucket SIZE = AdSizeBucket.forSize(720, 445);
+    private static final int ROWS = 24;
+    private static final int ADS = 6;
+
+    private final List<String> items = new ArrayList<>();
+    private ContentAdapter contentAdapter;
+    private NativeAdAdapter nativeAdAdapter;
+    private NativeAdPool pool;
+
+    @Before
+    public void setUp() {
+        ShadowLooper.pauseMainLooper();
+        for (int i = 0; i < ROWS; i++) {
+            items.add("row " + i);
+        }
+        contentAdapter = new ContentAdapter();
+        // slots after content rows 2, 6, 10, 14, 18 and 22
+        nativeAdAdapter = new NativeAdAdapter(RuntimeEnvironment.application, contentAdapter, INV_CODE, 0, 3, 5);
+        nativeAdAdapter.setDimensions(SIZE.getWidth(), SIZE.getHeight());
+        nativeAdAdapter.registerNativeAdLayout(new NativeAdLayout(1, 2, 3, 4));
+
+        pool = new NativeAdPool(INV_CODE, SIZE, ADS);
+        for (int i = 0; i < ADS; i++) {
+            pool.add(new NativeAd("Brand " + i, "http://example.com", "http://example.com/image.jpg", "Caption",
+                    "Heading", null, Collections.<String>emptyList(), Collections.<String>emptyList(), 60 * 1000,
+                    SIZE));
+        }
+        Map<AdSizeBucket, NativeAdPool> pools = new HashMap<>();
+        pools.put(SIZE, pool);
+        nativeAdAdapter.getNativeAdController().adoptPools(Collections.singletonMap(INV_CODE, pools));
+
+        // binding every row places the pooled ads
+        for (int position = 0; position < nativeAdAdapter.getCount(); position++) {
+            nativeAdAdapter.getItem(position);
+        }
+        assertEquals(ROWS + ADS, nativeAdAdapter.getCount());
+    }
+
+    @After
+    public void tearDown() {
+        nativeAdAdapter.destroy();
+        ShadowLooper.unPauseMainLooper();
+    }
+
+    @Test
+    public void removingRowsAfterTheContentAdapterNotifiedKeepsEveryAd() {
+        // the slot after content row 10 sits at position 11 plus the 2 live slots before it
+        Object moved = nativeAdAdapter.getItem(13);
+        assertTrue(moved instanceof NativeAd);
+
+        // until told otherwise the adapter takes the shrink for rows 22 and 23 trimmed, with the ad between them
+        items.subList(9, 11).clear();
+        contentAdapter.notifyDataSetChanged();
+        nativeAdAdapter.notifyContentRemoved(9, 2);
+
+        assertEquals(ROWS - 2 + ADS, nativeAdAdapter.getCount());
+        assertSame(moved, nativeAdAdapter.getItem(11));
+        assertEquals("row 11", nativeAdAdapter.getItem(12));
+        assertEquals(((NativeAd) moved).getSponsoredBy(), boundBrand(11));
+    }
+
+    @Test
+    public void removingRowsBeforeTheContentAdapterNotifiesKeepsEveryAd() {
+        Object moved = nativeAdAdapter.getItem(13);
+
+        items.subList(9, 11).clear();
+        nativeAdAdapter.notifyContentRemoved(9, 2);
+        contentAdapter.notifyDataSetChanged();
+
+        assertEquals(ROWS - 2 + ADS, nativeAdAdapter.getCount());
+        assertSame(moved, nativeAdAdapter.getItem(11));
+    }
+
+    @Test
+    public void rowsTrimmedFromTheEndTakeOnlyTheAdsBetweenThem() {
+        // rows 20 to 23 go, with the ad after row 22
+        items.subList(20, ROWS).clear();
+        contentAdapter.notifyDataSetChanged();
+
+        assertEquals(20 + ADS - 1, nativeAdAdapter.getCount());
+    }
+
+    @Test
+    public void clearingAndReloadingTheContentKeepsEveryAdInPlace() {
+        Object moved = nativeAdAdapter.getItem(13);
+        List<String> reloaded = new ArrayList<>(items);
+
+        items.clear();
+        contentAdapter.notifyDataSetChanged();
+        assertEquals(0, nativeAdAdapter.getCount());
+
+        items.addAll(reloaded);
+        contentAdapter.notifyDataSetChanged();
+
+        assertEquals(ROWS + ADS, nativeAdAdapter.getCount());
+        assertSame(moved, nativeAdAdapter.getItem(13));
+        assertEquals(((NativeAd) moved).getSponsoredBy(), boundBrand(13));
+        // nothing went back to the pool or was taken from it
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void reloadingFewerRowsServesTheAdsPastTheEndAgain() {
+        // the ad after row 22 has no rows after it once only 20 come back
+        Object cut = nativeAdAdapter.getItem(28);
+        assertTrue(cut instanceof NativeAd);
+        List<String> reloaded = new ArrayList<>(items.subList(0, 20));
+
+        items.clear();
+        contentAdapter.notifyDataSetChanged();
+        items.addAll(reloaded);
+        contentAdapter.notifyDataSetChanged();
+
+        assertEquals(20 + ADS - 1, nativeAdAdapter.getCount());
+        assertEquals(1, pool.size());
+        assertSame(cut, pool.poll(System.currentTimeMillis()));
+    }
+
+    // binds the row at position into a recycled ad row, as a list would
+    private CharSequence boundBrand(int position) {
+        LinearLayout row = new LinearLayout(RuntimeEnvironment.application);
+        NativeAdAdapter.NativeDisplayAdViewHolder holder = new NativeAdAdapter.NativeDisplayAdViewHolder();
+        holder.template = nativeAdAdapter.getDefaultTemplate();
+        holder.mainImage = new NetworkImageView(RuntimeEnvironment.application);
+        holder.header = new TextView(RuntimeEnvironment.application);
+        holder.caption = new TextView(RuntimeEnvironment.application);
+        holder.brand = new TextView(RuntimeEnvironment.application);
+        row.addView(holder.mainImage);
+        row.addView(holder.header);
+        row.addView(holder.caption);
+        row.addView(holder.brand);
+        row.setTag(holder);
+
+        View view = nativeAdAdapter.getView(position, row, new FrameLayout(RuntimeEnvironment.application));
+        assertSame(row, view);
+        return holder.brand.getText().toString();
+    }
+
+    private class ContentAdapter extends BaseAdapter {
+
+        @Override
+        public int getCount() {
+            return items.size();
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return items.get(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            return new View(parent.getContext());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.triplelift.sdk;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NativeAdPoolTest {
+
+    private NativeAdPool pool;
+    private long now;
+
+    @Before
+    public void setUp() {
+        pool = new NativeAdPool("inv_code", AdSizeBucket.forSize(720, 445), 1);
+        now = System.currentTimeMillis();
+    }
+
+    @Test
+    public void adsAreKeptInExpiryOrder() {
+        NativeAd late = ad(60000);
+        NativeAd early = ad(1000);
+        NativeAd middle = ad(30000);
+        pool.add(late);
+        pool.add(early);
+        pool.add(middle);
+
+        assertSame(early, pool.poll(now));
+        assertSame(middle, pool.poll(now));
+        assertSame(late, pool.poll(now));
+        assertNull(pool.poll(now));
+    }
+
+    @Test
+    public void evictionDropsOnlyExpiredAds() {
+        NativeAd fresh = ad(60000);
+        pool.add(ad(1000));
+        pool.add(fresh);
+        pool.add(ad(2000));
+
+        assertEquals(2, pool.evictExpired(now + 5000));
+        assertEquals(1, pool.size());
+        assertSame(fresh, pool.poll(now + 5000));
+    }
+
+    @Test
+    public void adsExpiringWithinTheWindowDoNotCountTowardsDepth() {
+        pool.add(ad(1000));
+
+        assertFalse(pool.needsRefill(now));
+        assertTrue(pool.needsRefill(now + 5000));
+
+        pool.requestsInFlight++;
+        assertFalse(pool.needsRefill(now + 5000));
+    }
+
+    @Test
+    public void nextExpiryIsTheEarliestAd() {
+        assertEquals(Long.MAX_VALUE, pool.nextExpiry());
+
+        NativeAd early = ad(1000);
+        pool.add(ad(60000));
+        pool.add(early);
+
+        assertEquals(early.getExpiresAt(), pool.nextExpiry());
+    }
+
+    @Test
+    public void nextExpiryAfterSkipsAdsExpiringUpToTheGivenTime() {
+        NativeAd early = ad(1000);
+        NativeAd late = ad(60000);
+        pool.add(late);
+        pool.add(early);
+
+        assertEquals(early.getExpiresAt(), pool.nextExpiryAfter(now));
+        assertEquals(late.getExpiresAt(), pool.nextExpiryAfter(early.getExpiresAt()));
+        assertEquals(Long.MAX_VALUE, pool.nextExpiryAfter(late.getExpiresAt()));
+    }
+
+    @Test
+    public void expiredAdIsServedOnlyWhenNoFreshOneIsLeft() {
+        NativeAd fresh = ad(60000);
+        NativeAd older = ad(1000);
+        NativeAd newer = ad(2000);
+        pool.add(older);
+        pool.add(fresh);
+        pool.add(newer);
+
+        assertSame(fresh, pool.poll(now + 5000));
+        // the most recently expired goes first
+        assertSame(newer, pool.poll(now + 5000));
+        assertSame(older, pool.poll(now + 5000));
+        assertNull(pool.poll(now + 5000));
+    }
+
+    private NativeAd ad(long ttlMillis) {
+        return new NativeAd("Brand", "http://example.com", "http://example.com/image.jpg", "Caption",
+                "Heading", null, Collections.<String>emptyList(), Collections.<String>emptyList(), ttlMillis,
+                pool.sizeBucket);
+    }
+}
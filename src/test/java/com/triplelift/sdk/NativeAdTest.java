@@ -0,0 +1,109 @@
+package com.triplelift.sdk;
+
+import android.content.Context;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NativeAdTest {
+
+    // what a pooled ad may hold on its own, prefixes and the size bucket are shared between ads
+    private static final long MAX_BYTES_PER_AD = 768;
+
+    @Test
+    public void adHoldsNoContext() {
+        for (Field field: NativeAd.class.getDeclaredFields()) {
+            assertFalse(field.getName() + " can hold a Context", Context.class.isAssignableFrom(field.getType())
+                    || field.getType() == Object.class);
+        }
+    }
+
+    @Test
+    public void pixelsRoundTrip() {
+        NativeAd nativeAd = ad(1);
+
+        assertEquals(Arrays.asList("http://eb2.3lift.com/mbi?id=1&t=imp", "http://ib.adnxs.com/it?id=1"),
+                nativeAd.getImpressionPixels());
+        assertEquals(Arrays.asList("http://eb2.3lift.com/mbc?id=1&t=click"), nativeAd.getClickPixels());
+    }
+
+    @Test
+    public void pixelPrefixesAreSharedBetweenAds() throws Exception {
+        Field field = NativeAd.class.getDeclaredField("pixels");
+        field.setAccessible(true);
+        String[] first = (String[]) field.get(ad(1));
+        String[] second = (String[]) field.get(ad(2));
+
+        // prefix and query pairs, only the queries are the ad's own
+        assertEquals(6, first.length);
+        for (int i = 0; i < first.length; i += 2) {
+            assertSame(first[i], second[i]);
+            assertNotSame(first[i + 1], second[i + 1]);
+        }
+    }
+
+    @Test
+    public void adHeapStaysWithinBudget() throws Exception {
+        long bytes = retainedBytes(ad(1));
+
+        assertTrue("an ad holds " + bytes + " bytes of its own, budget is " + MAX_BYTES_PER_AD,
+                bytes <= MAX_BYTES_PER_AD);
+    }
+
+    // counted by field layout rather than measured off the heap, so every JVM gives the same answer:
+    // 12 byte headers, 4 byte references, 2 byte chars, objects padded to 8 bytes
+    private static long retainedBytes(NativeAd nativeAd) throws Exception {
+        long fields = 12;
+        long owned = 0;
+        for (Field field: NativeAd.class.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            Class<?> type = field.getType();
+            fields += type == long.class || type == double.class ? 8
+                    : type == int.class || type == float.class ? 4
+                    : type == boolean.class || type == byte.class ? 1 : 4;
+            field.setAccessible(true);
+            Object value = field.get(nativeAd);
+            if (value instanceof String) {
+                owned += stringBytes((String) value);
+            } else if (value instanceof String[]) {
+                String[] pixels = (String[]) value;
+                owned += align(16 + 4L * pixels.length);
+                // only the queries, the prefixes are shared
+                for (int i = 1; i < pixels.length; i += 2) {
+                    owned += stringBytes(pixels[i]);
+                }
+            }
+        }
+        return align(fields) + owned;
+    }
+
+    private static long stringBytes(String string) {
+        return 24 + align(16 + 2L * string.length());
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) / 8 * 8;
+    }
+
+    private static NativeAd ad(int id) {
+        // pixel URLs arrive as fresh strings from the parser, as here
+        List<String> impressionPixels = Arrays.asList("http://eb2.3lift.com/mbi?id=" + id + "&t=imp",
+                "http://ib.adnxs.com/it?id=" + id);
+        List<String> clickPixels = Arrays.asList("http://eb2.3lift.com/mbc?id=" + id + "&t=click");
+        return new NativeAd("Brand", "http://example.com/landing", "http://img.3lift.com/?url=creative.jpg",
+                "Caption", "Heading", null, impressionPixels, clickPixels,
+                NativeAdConfig.DEFAULT.getDefaultAdTtlMillis(), AdSizeBucket.forSize(720, 445));
+    }
+}
@@ -0,0 +1,281 @@
+package com.triplelift.sdk;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.SystemClock;
+
+import com.android.volley.RequestQueue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.shadows.ShadowNetworkInfo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Runs feeds of ad slots against a SimulatedNetwork on virtual time and fails when fill latency,
+ * auctions per placement or beacon delivery go over budget, so regressions in the refill loop,
+ * retry ladder and timeouts show up as numbers. Budgets are system properties, pass them with
+ * e.g. ./gradlew test -Psim.maxP99FillMillis=5000
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class NetworkSimulationTest {
+
+    private static final long SEED = Long.getLong("sim.seed", 42);
+    private static final int FEEDS = Integer.getInteger("sim.feeds", 8);
+    private static final int PLACEMENTS_PER_FEED = Integer.getInteger("sim.placementsPerFeed", 250);
+    private static final long MAX_MEDIAN_FILL_MILLIS = Long.getLong("sim.maxMedianFillMillis", 500);
+    private static final long MAX_P99_FILL_MILLIS = Long.getLong("sim.maxP99FillMillis", 10 * 1000);
+    private static final double MAX_AUCTIONS_PER_PLACEMENT =
+            Double.parseDouble(System.getProperty("sim.maxAuctionsPerPlacement", "1.5"));
+    private static final double MIN_BEACON_DELIVERY =
+            Double.parseDouble(System.getProperty("sim.minBeaconDelivery", "0.99"));
+    private static final int MAX_OUTAGE_AUCTIONS = Integer.getInteger("sim.maxOutageAuctions", 20);
+
+    private static final int FRAME_MILLIS = 100;
+    // a fresh slot scrolls into view this often in every feed
+    private static final int SLOT_INTERVAL_MILLIS = 1200;
+    private static final AdSizeBucket SIZE = AdSizeBucket.forSize(720, 445);
+
+    private Context context;
+    private Controller sdk;
+    private RequestQueue realQueue;
+    private SimulatedNetwork network;
+    private final List<Feed> feeds = new ArrayList<>();
+    private final List<Long> fillMillis = new ArrayList<>();
+    private int impressions;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.application;
+        sdk = Controller.getInstance(context);
+        realQueue = sdk.getRequestQueue();
+        network = new SimulatedNetwork(SEED);
+        sdk.setRequestQueue(network);
+        // every completion, retry and refill runs off the paused main looper's clock
+        ShadowLooper.pauseMainLooper();
+    }
+
+    @After
+    public void tearDown() {
+        for (Feed feed: feeds) {
+            feed.controller.destroy();
+        }
+        ShadowLooper.unPauseMainLooper();
+        sdk.setNetworkBatching(false);
+        sdk.setRequestQueue(realQueue);
+    }
+
+    @Test
+    public void thousandsOfPlacementsFillFastWithoutExtraAuctionsAndBeaconsArrive() {
+        SimulatedNetwork.Route auctions = network.route(SimulatedNetwork.AUCTION_URL)
+                .setLatency(150, 900).setErrorRate(0.01).setDropRate(0.01).setFillRate(0.9);
+        SimulatedNetwork.Route images = network.route(SimulatedNetwork.IMAGE_HOST)
+                .setLatency(80, 400).setBodyBytes(30 * 1024);
+        SimulatedNetwork.Route pixels = network.route(SimulatedNetwork.PIXEL_HOST)
+                .setLatency(100, 600).setErrorRate(0.002).setDropRate(0.03);
+        // creatives and auctions share the link, bursts of prefetches queue ahead of auction answers
+        network.setDownlinkBytesPerSecond(512 * 1024);
+
+        addFeeds(FEEDS, PLACEMENTS_PER_FEED);
+        long start = SystemClock.uptimeMillis();
+        // a dropped pixel times out after 20s and its retry after another 40s
+        scroll((long) PLACEMENTS_PER_FEED * SLOT_INTERVAL_MILLIS + 90 * 1000);
+
+        int placements = FEEDS * PLACEMENTS_PER_FEED;
+        long medianFill = percentile(fillMillis, 50);
+        long p99Fill = percentile(fillMillis, 99);
+        double auctionsPerPlacement = (double) auctions.getAttempts() / placements;
+        int beacons = pixels.getServed().size();
+        double beaconDelivery = impressions == 0 ? 0 : (double) beacons / impressions;
+        double fillsPerSecond = fillMillis.size() * 1000.0 / (SystemClock.uptimeMillis() - start);
+
+        String report = " (placements=" + placements + " filled=" + fillMillis.size()
+                + " auctions=" + auctions.getAttempts() + " auctionErrors=" + auctions.getErrors()
+                + " images=" + images.getAnswered() + " imageBytes=" + images.getBytes()
+                + " impressions=" + impressions + " beacons=" + beacons + " pixelTimeouts=" + pixels.getTimeouts()
+                + " maxFillMillis=" + percentile(fillMillis, 100) + " fillsPerSecond=" + fillsPerSecond + ")";
+
+        assertEquals("requests the simulated network had no route for" + report, 0, network.getUnrouted());
+        assertEquals("placements left without an ad" + report, placements, fillMillis.size());
+        assertTrue("median fill took " + medianFill + "ms, budget is " + MAX_MEDIAN_FILL_MILLIS + report,
+                medianFill <= MAX_MEDIAN_FILL_MILLIS);
+        assertTrue("p99 fill took " + p99Fill + "ms, budget is " + MAX_P99_FILL_MILLIS + report,
+                p99Fill <= MAX_P99_FILL_MILLIS);
+        assertTrue(auctionsPerPlacement + " auctions per placement, budget is " + MAX_AUCTIONS_PER_PLACEMENT
+                + report, auctionsPerPlacement <= MAX_AUCTIONS_PER_PLACEMENT);
+        assertTrue(beaconDelivery + " of impression beacons arrived, budget is " + MIN_BEACON_DELIVERY + report,
+                beaconDelivery >= MIN_BEACON_DELIVERY);
+        for (Map.Entry<String, Integer> beacon: pixels.getServed().entrySet()) {
+            assertEquals(beacon.getKey() + " arrived more than once", Integer.valueOf(1), beacon.getValue());
+        }
+    }
+
+    @Test
+    public void retryLadderBacksOffThroughAnOutageAndRecovers() {
+        SimulatedNetwork.Route auctions = network.route(SimulatedNetwork.AUCTION_URL)
+                .setLatency(150, 900).setErrorRate(1).setFillRate(1);
+        network.route(SimulatedNetwork.IMAGE_HOST);
+        network.route(SimulatedNetwork.PIXEL_HOST);
+
+        // one slot waits through ten minutes of errors, asking for an ad on every frame
+        addFeeds(1, 1);
+        scroll(10 * 60 * 1000);
+        int outageAuctions = auctions.getAttempts();
+        assertTrue("no retry during the outage", outageAuctions > 1);
+        assertTrue(outageAuctions + " auctions during the outage, budget is " + MAX_OUTAGE_AUCTIONS,
+                outageAuctions <= MAX_OUTAGE_AUCTIONS);
+        assertTrue(fillMillis.isEmpty());
+
+        // the ladder's longest step is the longest the feed may stay empty once the exchange is back
+        auctions.setErrorRate(0);
+        int[] retryDelays = NativeAdConfig.DEFAULT.getRetryDelaysMillis();
+        scroll(retryDelays[retryDelays.length - 1] + 10 * 1000);
+
+        int recoveryAuctions = auctions.getAttempts() - outageAuctions;
+        assertEquals("the slot was never filled after the outage, " + recoveryAuctions + " auctions since",
+                1, fillMillis.size());
+        assertTrue(recoveryAuctions + " auctions to recover, budget is 2", recoveryAuctions <= 2);
+    }
+
+    @Test
+    public void auctionsSlowerThanTheTimeoutDoNotPileUp() {
+        SimulatedNetwork.Route auctions = network.route(SimulatedNetwork.AUCTION_URL)
+                .setLatency(8000, 12000).setFillRate(1);
+        network.route(SimulatedNetwork.IMAGE_HOST);
+        network.route(SimulatedNetwork.PIXEL_HOST);
+
+        addFeeds(4, 50);
+        int maxInFlight = 0;
+        long end = SystemClock.uptimeMillis() + 60 * 1000;
+        while (SystemClock.uptimeMillis() < end) {
+            frame();
+            maxInFlight = Math.max(maxInFlight, network.getInFlight());
+        }
+
+        assertTrue(fillMillis.size() + " slots filled by auctions slower than the timeout", fillMillis.isEmpty());
+        assertEquals("a timed out auction was retried by the transport", auctions.getRequests(), auctions.getAttempts());
+        // pools sit at their minimum depth, one auction each at a time however often the slots ask
+        assertTrue(maxInFlight + " requests in flight for 4 pools, " + auctions.getAttempts() + " auctions and "
+                + auctions.getTimeouts() + " timeouts", maxInFlight <= 4);
+    }
+
+    @Test
+    public void pausingCancelsRefillsHeldForTheRadio() {
+        SimulatedNetwork.Route auctions = network.route(SimulatedNetwork.AUCTION_URL).setFillRate(1);
+        network.route(SimulatedNetwork.IMAGE_HOST);
+        network.route(SimulatedNetwork.PIXEL_HOST);
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        shadowOf(connectivityManager).setActiveNetworkInfo(ShadowNetworkInfo.newInstance(
+                NetworkInfo.DetailedState.CONNECTED, ConnectivityManager.TYPE_MOBILE, 0, true, true));
+        sdk.setNetworkBatching(true);
+
+        addFeeds(1, 0);
+        Feed feed = feeds.get(0);
+        ShadowLooper.idleMainLooper(NetworkScheduler.RADIO_TAIL + 1000);
+        int filled = auctions.getAttempts();
+        assertTrue(filled > 0);
+
+        // the pool still has ads, so the extra refill waits for the radio to wake up
+        feed.controller.setPoolDepth(feed.invCode, SIZE, NativeAdConfig.DEFAULT.getMinPoolSize() + 1);
+        assertEquals(filled, auctions.getAttempts());
+        feed.controller.pause();
+        ShadowLooper.idleMainLooper(NetworkScheduler.MAX_DEFER + 1000);
+
+        assertEquals("a refill went out after pause", filled, auctions.getAttempts());
+        feed.controller.resume();
+        ShadowLooper.idleMainLooper(NetworkScheduler.MAX_DEFER + 1000);
+        assertEquals("resume did not refill the pool", filled + 1, auctions.getAttempts());
+    }
+
+    private void addFeeds(int count, int placements) {
+        for (int i = 0; i < count; i++) {
+            // offset so the feeds' slots do not all come into view in the same frame
+            feeds.add(new Feed("sim_inv_code_" + i, placements, i * SLOT_INTERVAL_MILLIS / count));
+        }
+    }
+
+    private void scroll(long millis) {
+        long end = SystemClock.uptimeMillis() + millis;
+        while (SystemClock.uptimeMillis() < end) {
+            frame();
+        }
+    }
+
+    private void frame() {
+        long now = SystemClock.uptimeMillis();
+        for (Feed feed: feeds) {
+            feed.frame(now);
+        }
+        ShadowLooper.idleMainLooper(FRAME_MILLIS);
+    }
+
+    private static long percentile(List<Long> values, int percentile) {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(index, 0));
+    }
+
+    /** A feed scrolling slots into view at a steady pace, each slot binds the next pooled ad as the adapter does */
+    private class Feed {
+        final String invCode;
+        final NativeAdController controller;
+        final Map<String, String> params = new HashMap<>();
+        final int placements;
+        final long firstSlotAt;
+        // when each slot still without an ad came into view
+        final ArrayDeque<Long> waiting = new ArrayDeque<>();
+        int shown;
+
+        Feed(String invCode, int placements, long offsetMillis) {
+            this.invCode = invCode;
+            this.placements = placements;
+            this.firstSlotAt = SystemClock.uptimeMillis() + offsetMillis;
+            this.controller = new NativeAdController(context);
+            params.put("width", Integer.toString(SIZE.getWidth()));
+            params.put("height", Integer.toString(SIZE.getHeight()));
+            controller.registerInvCode(invCode);
+            controller.requestAds(invCode, SIZE, params);
+        }
+
+        void frame(long now) {
+            while (shown < placements && firstSlotAt + (long) shown * SLOT_INTERVAL_MILLIS <= now) {
+                waiting.add(now);
+                shown++;
+            }
+            while (!waiting.isEmpty()) {
+                NativeAd nativeAd = controller.retrieveNativeAd(invCode, SIZE);
+                if (nativeAd == null) {
+                    // NativeAdAdapter.loadAds on a miss
+                    controller.requestAds(invCode, SIZE, params);
+                    return;
+                }
+                fillMillis.add(now - waiting.poll());
+                nativeAd.fireImpression(sdk);
+                impressions++;
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.triplelift.sdk;
+
+import android.content.Context;
+import android.database.DataSetObserver;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import com.android.volley.RequestQueue;
+import com.android.volley.toolbox.NetworkImageView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Flings through a large feed wrapped in a NativeAdAdapter, fed by a SimulatedNetwork on the paused
+ * main looper's clock, and fails when the SDK's share of the work goes over budget. Budgets are
+ * system properties, pass them with e.g. ./gradlew test -Pharness.maxBytesPerBind=65536. Time spent
+ * in the SDK per row is only checked when harness.maxSdkNanosPerRow is given, wall time varies too
+ * much between machines for a default.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ScrollHarnessTest {
+
+    private static final long SEED = Long.getLong("harness.seed", 42);
+    private static final int ROWS = Integer.getInteger("harness.rows", 100000);
+    private static final int VISIBLE_ROWS = Integer.getInteger("harness.visibleRows", 10);
+    private static final int ROWS_PER_FRAME = Integer.getInteger("harness.rowsPerFrame", 40);
+    private static final int FRAME_MILLIS = Integer.getInteger("harness.frameMillis", 16);
+    private static final long MAX_BYTES_PER_BIND = Long.getLong("harness.maxBytesPerBind", 128 * 1024);
+    private static final Long MAX_SDK_NANOS_PER_ROW = Long.getLong("harness.maxSdkNanosPerRow");
+    private static final double MAX_NOTIFIES_PER_PLACEMENT =
+            Double.parseDouble(System.getProperty("harness.maxNotifiesPerPlacement", "1.0"));
+
+    private static final int ROW_WIDTH = 720;
+    private static final int AD_ROW_HEIGHT = 600;
+
+    private Controller sdk;
+    private RequestQueue realQueue;
+    private SimulatedNetwork network;
+    private Context context;
+    private ContentAdapter contentAdapter;
+    private NativeAdAdapter nativeAdAdapter;
+    private AllocationCounter allocationCounter;
+    private int notifies;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.application;
+        sdk = Controller.getInstance(context);
+        realQueue = sdk.getRequestQueue();
+        network = new SimulatedNetwork(SEED);
+        sdk.setRequestQueue(network);
+        // every answer is delivered off the paused main looper's clock, frames replay exactly
+        ShadowLooper.pauseMainLooper();
+
+        contentAdapter = new ContentAdapter(context, ROWS);
+        nativeAdAdapter = new NativeAdAdapter(context, contentAdapter, "harness_inv_code", 0, 3, 7);
+        nativeAdAdapter.registerNativeAdLayout(new NativeAdLayout(1, 2, 3, 4));
+        nativeAdAdapter.registerDataSetObserver(new DataSetObserver() {
+            @Override
+            public void onChanged() {
+                notifies++;
+            }
+        });
+        allocationCounter = new AllocationCounter();
+    }
+
+    @After
+    public void tearDown() {
+        nativeAdAdapter.destroy();
+        ShadowLooper.unPauseMainLooper();
+        sdk.setRequestQueue(realQueue);
+    }
+
+    @Test
+    public void flingThroughFeedStaysWithinBudget() {
+        SimulatedNetwork.Route auctions = network.route(SimulatedNetwork.AUCTION_URL)
+                .setLatency(100, 400).setFillRate(1);
+        SimulatedNetwork.Route images = network.route(SimulatedNetwork.IMAGE_HOST).setLatency(50, 200);
+        SimulatedNetwork.Route pixels = network.route(SimulatedNetwork.PIXEL_HOST).setLatency(50, 200);
+
+        nativeAdAdapter.loadAds();
+        ShadowLooper.idleMainLooper(1000);
+
+        ViewGroup parent = new FrameLayout(context);
+        View[] scrap = new View[nativeAdAdapter.getViewTypeCount()];
+        int adViewType = contentAdapter.getViewTypeCount();
+        scrap[adViewType] = newAdRow(context, nativeAdAdapter.getDefaultTemplate());
+
+        long sdkNanos = 0;
+        long adBindBytes = 0;
+        int adBinds = 0;
+        int rowsBound = 0;
+
+        int first = 0;
+        while (first < nativeAdAdapter.getCount()) {
+            int count = nativeAdAdapter.getCount();
+            for (int position = first; position < first + VISIBLE_ROWS && position < count; position++) {
+                contentAdapter.resetNanos();
+                long allocatedBefore = allocationCounter.allocatedBytes();
+                long start = System.nanoTime();
+
+                int viewType = nativeAdAdapter.getItemViewType(position);
+                View view = nativeAdAdapter.getView(position, scrap[viewType], parent);
+
+                long elapsed = System.nanoTime() - start;
+                long allocated = allocationCounter.allocatedBytes() - allocatedBefore
+                        - allocationCounter.getOverhead();
+
+                sdkNanos += elapsed - contentAdapter.resetNanos();
+                rowsBound++;
+                if (viewType == adViewType) {
+                    adBinds++;
+                    adBindBytes += allocated;
+                    // what ListView would do next, this is where NetworkImageView starts loading
+                    view.measure(View.MeasureSpec.makeMeasureSpec(ROW_WIDTH, View.MeasureSpec.EXACTLY),
+                            View.MeasureSpec.makeMeasureSpec(AD_ROW_HEIGHT, View.MeasureSpec.EXACTLY));
+                    view.layout(0, 0, ROW_WIDTH, AD_ROW_HEIGHT);
+                }
+                scrap[viewType] = view;
+            }
+            first += ROWS_PER_FRAME;
+            ShadowLooper.idleMainLooper(FRAME_MILLIS);
+        }
+
+        int placements = adsPlaced();
+        long bytesPerBind = adBinds == 0 ? 0 : adBindBytes / adBinds;
+        long sdkNanosPerRow = rowsBound == 0 ? 0 : sdkNanos / rowsBound;
+        double notifiesPerPlacement = placements == 0 ? 0 : (double) notifies / placements;
+        String report = " (rows=" + rowsBound + " adBinds=" + adBinds + " placements=" + placements
+                + " auctions=" + auctions.getAttempts() + " images=" + images.getAttempts()
+                + " pixels=" + pixels.getAttempts() + ")";
+
+        assertTrue("no ads were placed, the harness measured nothing" + report, placements > 0);
+        if (allocationCounter.isSupported()) {
+            assertTrue("allocated " + bytesPerBind + " bytes per ad bind, budget is " + MAX_BYTES_PER_BIND
+                    + report, bytesPerBind <= MAX_BYTES_PER_BIND);
+        }
+        if (MAX_SDK_NANOS_PER_ROW != null) {
+            assertTrue("spent " + sdkNanosPerRow + "ns per row in the SDK, budget is " + MAX_SDK_NANOS_PER_ROW
+                    + report, sdkNanosPerRow <= MAX_SDK_NANOS_PER_ROW);
+        }
+        assertTrue(notifiesPerPlacement + " notifyDataSetChanged calls per placement, budget is "
+                + MAX_NOTIFIES_PER_PLACEMENT + report, notifiesPerPlacement <= MAX_NOTIFIES_PER_PLACEMENT);
+        assertEquals("requests the simulated network had no route for" + report, 0, network.getUnrouted());
+    }
+
+    private int adsPlaced() {
+        return nativeAdAdapter.getCount() - contentAdapter.getCount();
+    }
+
+    // the layout id given to the adapter is 0, so the ad row is built here and every bind recycles it
+    private static View newAdRow(Context context, NativeAdAdapter.Template template) {
+        LinearLayout row = new LinearLayout(context);
+        row.setOrientation(LinearLayout.VERTICAL);
+        NativeAdAdapter.NativeDisplayAdViewHolder holder = new NativeAdAdapter.NativeDisplayAdViewHolder();
+        holder.template = template;
+        holder.mainImage = new NetworkImageView(context);
+        holder.header = new TextView(context);
+        holder.caption = new TextView(context);
+        holder.brand = new TextView(context);
+        row.addView(holder.mainImage, new LinearLayout.LayoutParams(ROW_WIDTH, 445));
+        row.addView(holder.header);
+        row.addView(holder.caption);
+        row.addView(holder.brand);
+        row.setTag(holder);
+        return row;
+    }
+
+    /** Allocation free content adapter that times itself, so its cost can be taken out of the SDK's */
+    static class ContentAdapter extends BaseAdapter {
+        private final Context context;
+        private final int count;
+        private final String[] labels = new String[64];
+        private long nanos;
+
+        ContentAdapter(Context context, int count) {
+            this.context = context;
+            this.count = count;
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = "Content row " + i;
+            }
+        }
+
+        long resetNanos() {
+            long spent = nanos;
+            nanos = 0;
+            return spent;
+        }
+
+        @Override
+        public int getCount() {
+            return count;
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return labels[position & (labels.length - 1)];
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public View getView(int position, View view, ViewGroup parent) {
+            long start = System.nanoTime();
+            TextView textView = view instanceof TextView ? (TextView) view : new TextView(context);
+            textView.setText(labels[position & (labels.length - 1)]);
+            nanos += System.nanoTime() - start;
+            return textView;
+        }
+    }
+
+    /** Per-thread allocated bytes through com.sun.management.ThreadMXBean, when the JVM has it */
+    static class AllocationCounter {
+        private final Object threadMXBean;
+        private final Method allocatedBytes;
+        private final long threadId = Thread.currentThread().getId();
+        private final long overhead;
+
+        AllocationCounter() {
+            Object bean = null;
+            Method method = null;
+            try {
+                Class<?> factory = Class.forName("java.lang.management.ManagementFactory");
+                bean = factory.getMethod("getThreadMXBean").invoke(null);
+                method = Class.forName("com.sun.management.ThreadMXBean")
+                        .getMethod("getThreadAllocatedBytes", long.class);
+                method.invoke(bean, threadId);
+            } catch (Exception e) {
+                bean = null;
+                method = null;
+            }
+            this.threadMXBean = bean;
+            this.allocatedBytes = method;
+
+            // the reflective call boxes its result, take that out of every measurement
+            long calibration = 0;
+            if (isSupported()) {
+                for (int i = 0; i < 100; i++) {
+                    long before = read();
+                    calibration = read() - before;
+                }
+            }
+            this.overhead = calibration;
+        }
+
+        boolean isSupported() {
+            return allocatedBytes != null;
+        }
+
+        long getOverhead() {
+            return overhead;
+        }
+
+        long allocatedBytes() {
+            if (!isSupported()) {
+                return 0;
+            }
+            return read();
+        }
+
+        private long read() {
+            try {
+                return (Long) allocatedBytes.invoke(threadMXBean, threadId);
+            } catch (Exception e) {
+                return 0;
+            }
+        }
+    }
+}
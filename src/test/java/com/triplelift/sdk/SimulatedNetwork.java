@@ -0,0 +1,369 @@
+package com.triplelift.sdk;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.ExecutorDelivery;
+import com.android.volley.Network;
+import com.android.volley.NetworkResponse;
+import com.android.volley.NoConnectionError;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.Response;
+import com.android.volley.ResponseDelivery;
+import com.android.volley.ServerError;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyAccess;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.NoCache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * RequestQueue answered by a scripted network on the main looper's virtual clock, for tests that
+ * run the controller against thousands of requests. Routes match URLs by prefix, each with its own
+ * latency distribution, error and drop rates, and all answers share one downlink. Volley's
+ * dispatchers never start, nothing runs on another thread and every draw comes from one seeded
+ * Random, so a run replays exactly. Like BasicNetwork, only an attempt that timed out is retried,
+ * as far as the request's RetryPolicy allows.
+ */
+class SimulatedNetwork extends RequestQueue {
+
+    static final String AUCTION_URL = AuctionUrlBuilder.BASE_URL;
+    static final String IMAGE_HOST = "http://img.sim/";
+    static final String PIXEL_HOST = "http://pixel.sim/";
+
+    /** Requests whose URL starts with a prefix, with what the network does to them and counts of it */
+    class Route {
+        private final String prefix;
+        private long medianMillis = 50;
+        private double sigma = 0;
+        private double errorRate = 0;
+        private double dropRate = 0;
+        private int bodyBytes = 43;
+        private boolean auction = false;
+        private double fillRate = 1;
+        private long adTtlSeconds = 60 * 60;
+
+        private int requests, attempts, answered, errors, timeouts, cancelled;
+        private long bytes;
+        private final Map<String, Integer> served = new HashMap<>();
+
+        Route(String prefix) {
+            this.prefix = prefix;
+        }
+
+        /** Log-normal time to first byte, p99 at or above the median */
+        Route setLatency(long medianMillis, long p99Millis) {
+            this.medianMillis = medianMillis;
+            this.sigma = Math.log((double) Math.max(p99Millis, medianMillis) / Math.max(medianMillis, 1)) / 2.326;
+            return this;
+        }
+
+        /** Share of attempts answered with a 503 */
+        Route setErrorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        /** Share of attempts that never get an answer and time out */
+        Route setDropRate(double dropRate) {
+            this.dropRate = dropRate;
+            return this;
+        }
+
+        Route setBodyBytes(int bodyBytes) {
+            this.bodyBytes = bodyBytes;
+            return this;
+        }
+
+        /** Answers as an auction, encoded as the request's Accept header asks */
+        Route setFillRate(double fillRate) {
+            this.auction = true;
+            this.fillRate = fillRate;
+            return this;
+        }
+
+        Route setAdTtlSeconds(long adTtlSeconds) {
+            this.adTtlSeconds = adTtlSeconds;
+            return this;
+        }
+
+        /** Requests added, retries not counted */
+        int getRequests() {
+            return requests;
+        }
+
+        /** Requests plus retries, what the server side sees */
+        int getAttempts() {
+            return attempts;
+        }
+
+        int getAnswered() {
+            return answered;
+        }
+
+        int getErrors() {
+            return errors;
+        }
+
+        int getTimeouts() {
+            return timeouts;
+        }
+
+        int getCancelled() {
+            return cancelled;
+        }
+
+        long getBytes() {
+            return bytes;
+        }
+
+        /** Answered attempts by URL */
+        Map<String, Integer> getServed() {
+            return Collections.unmodifiableMap(served);
+        }
+
+        private long sampleLatency() {
+            return Math.max(0, Math.round(medianMillis * Math.exp(sigma * random.nextGaussian())));
+        }
+
+        private NetworkResponse answer(Request<?> request) {
+            if (!auction) {
+                return new NetworkResponse(200, new byte[bodyBytes],
+                        Collections.singletonMap("Content-Type", "image/png"), false);
+            }
+            int ad = ++ads;
+            AuctionAnswer answer = random.nextDouble() < fillRate
+                    ? AuctionAnswer.fill(new AuctionResponse("Sim Brand " + ad, "http://landing.sim/" + ad,
+                            IMAGE_HOST + "creative/" + ad + ".jpg", "Sim caption " + ad, "Sim heading " + ad,
+                            Collections.singletonList(PIXEL_HOST + "imp?ad=" + ad),
+                            Collections.singletonList(PIXEL_HOST + "click?ad=" + ad), adTtlSeconds, 1.0, null, null))
+                    : AuctionAnswer.noFill("no_bid");
+            AuctionResponseCodec codec = acceptsBinary(request) ? AuctionResponseCodecs.BINARY : AuctionResponseCodecs.JSON;
+            try {
+                return new NetworkResponse(200, codec.encode(answer),
+                        Collections.singletonMap("Content-Type", codec.getContentType()), false);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Random random;
+    // delivers right away, the completion already runs on the main looper at its virtual time
+    private final ResponseDelivery delivery = new ExecutorDelivery(new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    });
+    private final List<Route> routes = new ArrayList<>();
+    private final Set<Request<?>> inFlight = new LinkedHashSet<>();
+    private long downlinkBytesPerSecond = 0;
+    private long downlinkFreeAt = 0;
+    private int sequence = 0;
+    private int ads = 0;
+    private int unrouted = 0;
+
+    SimulatedNetwork(long seed) {
+        super(new NoCache(), new Network() {
+            @Override
+            public NetworkResponse performRequest(Request<?> request) throws VolleyError {
+                throw new IllegalStateException("the simulated network answers requests itself");
+            }
+        });
+        this.random = new Random(seed);
+    }
+
+    /** The route for a URL prefix, created on first use. The longest matching prefix wins. */
+    Route route(String prefix) {
+        for (Route route: routes) {
+            if (route.prefix.equals(prefix)) {
+                return route;
+            }
+        }
+        Route route = new Route(prefix);
+        routes.add(route);
+        return route;
+    }
+
+    /** Bodies queue for a downlink this fast, 0 for no cap */
+    void setDownlinkBytesPerSecond(long downlinkBytesPerSecond) {
+        this.downlinkBytesPerSecond = downlinkBytesPerSecond;
+    }
+
+    /** Requests sent or retried and not yet answered, failed or dropped after a cancel */
+    int getInFlight() {
+        return inFlight.size();
+    }
+
+    /** Requests no route matched, they fail as if there were no connection */
+    int getUnrouted() {
+        return unrouted;
+    }
+
+    @Override
+    public <T> Request<T> add(Request<T> request) {
+        request.setRequestQueue(this);
+        request.setSequence(sequence++);
+        inFlight.add(request);
+        Route route = routeFor(request.getUrl());
+        if (route == null) {
+            unrouted++;
+        } else {
+            route.requests++;
+        }
+        attempt(request, route);
+        return request;
+    }
+
+    @Override
+    public void cancelAll(RequestFilter filter) {
+        for (Request<?> request: new ArrayList<>(inFlight)) {
+            if (filter.apply(request)) {
+                request.cancel();
+            }
+        }
+    }
+
+    private Route routeFor(String url) {
+        Route match = null;
+        for (Route route: routes) {
+            if (url.startsWith(route.prefix) && (match == null || route.prefix.length() > match.prefix.length())) {
+                match = route;
+            }
+        }
+        return match;
+    }
+
+    private void attempt(final Request<?> request, final Route route) {
+        if (route == null) {
+            at(0, request, new Runnable() {
+                @Override
+                public void run() {
+                    fail(request, null, new NoConnectionError());
+                }
+            });
+            return;
+        }
+        route.attempts++;
+        long now = SystemClock.uptimeMillis();
+        int timeout = request.getTimeoutMs();
+        long latency = route.sampleLatency();
+        double draw = random.nextDouble();
+
+        if (draw < route.dropRate) {
+            timeOutAfter(timeout, request, route);
+            return;
+        }
+        if (draw < route.dropRate + route.errorRate) {
+            if (latency > timeout) {
+                timeOutAfter(timeout, request, route);
+                return;
+            }
+            at(latency, request, new Runnable() {
+                @Override
+                public void run() {
+                    fail(request, route, new ServerError(new NetworkResponse(503, new byte[0],
+                            Collections.<String, String>emptyMap(), false)));
+                }
+            });
+            return;
+        }
+
+        final NetworkResponse response = route.answer(request);
+        long done = now + latency;
+        if (downlinkBytesPerSecond > 0) {
+            // the body waits for the bodies ahead of it, then takes its share of the link
+            done = Math.max(done, downlinkFreeAt) + response.data.length * 1000L / downlinkBytesPerSecond;
+            downlinkFreeAt = done;
+        }
+        if (done - now > timeout) {
+            timeOutAfter(timeout, request, route);
+            return;
+        }
+        at(done - now, request, new Runnable() {
+            @Override
+            public void run() {
+                succeed(request, route, response);
+            }
+        });
+    }
+
+    private void timeOutAfter(long timeout, final Request<?> request, final Route route) {
+        at(timeout, request, new Runnable() {
+            @Override
+            public void run() {
+                route.timeouts++;
+                TimeoutError error = new TimeoutError();
+                try {
+                    request.getRetryPolicy().retry(error);
+                } catch (VolleyError exhausted) {
+                    fail(request, route, exhausted);
+                    return;
+                }
+                attempt(request, route);
+            }
+        });
+    }
+
+    // runs the outcome of an attempt delay from now, unless the request was cancelled by then
+    private void at(long delay, final Request<?> request, final Runnable outcome) {
+        handler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (request.isCanceled()) {
+                    Route route = routeFor(request.getUrl());
+                    if (route != null) {
+                        route.cancelled++;
+                    }
+                    inFlight.remove(request);
+                    VolleyAccess.finish(request, "network-discard-cancelled");
+                    return;
+                }
+                outcome.run();
+            }
+        }, delay);
+    }
+
+    private void succeed(Request<?> request, Route route, NetworkResponse response) {
+        route.answered++;
+        route.bytes += response.data.length;
+        String url = request.getUrl();
+        Integer count = route.served.get(url);
+        route.served.put(url, count == null ? 1 : count + 1);
+        inFlight.remove(request);
+        Response<?> parsed = VolleyAccess.parse(request, response);
+        delivery.postResponse(request, parsed);
+    }
+
+    private void fail(Request<?> request, Route route, VolleyError error) {
+        if (route != null) {
+            route.errors++;
+        }
+        inFlight.remove(request);
+        delivery.postError(request, VolleyAccess.parseError(request, error));
+    }
+
+    private static boolean acceptsBinary(Request<?> request) {
+        try {
+            String accept = request.getHeaders().get("Accept");
+            return accept != null && accept.contains(BinaryAuctionResponseCodec.CONTENT_TYPE);
+        } catch (AuthFailureError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.triplelift.sdk;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okio.Buffer;
+
+/**
+ * Local auction, creative and pixel server for JVM tests. Besides the default auction endpoint it
+ * plays any number of named ones, each with its own delay, fill and price.
+ */
+class StubAdServer {
+
+    /** A named auction endpoint, served under /mj/auction/name */
+    class Endpoint {
+        private final String name;
+        private final AtomicInteger auctions = new AtomicInteger();
+        private volatile long delayMillis = 0;
+        private volatile boolean fill = true;
+        private volatile double price = 0;
+
+        Endpoint(String name) {
+            this.name = name;
+        }
+
+        String getAuctionUrl() {
+            return server.url("/mj/auction/" + name).toString() + "?invType=app&";
+        }
+
+        Endpoint setDelayMillis(long delayMillis) {
+            this.delayMillis = delayMillis;
+            return this;
+        }
+
+        Endpoint setFill(boolean fill) {
+            this.fill = fill;
+            return this;
+        }
+
+        Endpoint setPrice(double price) {
+            this.price = price;
+            return this;
+        }
+
+        int getAuctionCount() {
+            return auctions.get();
+        }
+
+        private MockResponse dispatch(RecordedRequest request) {
+            int auction = auctions.incrementAndGet();
+            String body = fill
+                    ? auctionResponse(name + "-" + auction).replaceFirst("\\}$", ",\"price\":" + price + "}")
+                    : "{\"status\":\"no_bid\"}";
+            return answer(request, body).setBodyDelay(delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // 1x1 PNG, used for creatives and pixels
+    static final byte[] PNG = new byte[] {
+            -119, 80, 78, 71, 13, 10, 26, 10, 0, 0, 0, 13, 73, 72, 68, 82, 0, 0, 0, 1, 0, 0, 0, 1, 8, 4, 0, 0,
+            0, -75, 28, 12, 2, 0, 0, 0, 11, 73, 68, 65, 84, 120, -38, 99, 100, 96, 0, 0, 0, 6, 0, 2, 48, -127,
+            -48, 47, 0, 0, 0, 0, 73, 69, 78, 68, -82, 66, 96, -126};
+
+    private final MockWebServer server = new MockWebServer();
+    private final AtomicInteger auctions = new AtomicInteger();
+    private final AtomicInteger images = new AtomicInteger();
+    private final AtomicInteger pixels = new AtomicInteger();
+    private volatile long auctionDelayMillis = 0;
+    private volatile boolean fill = true;
+    private volatile boolean binary = true;
+    private final AtomicInteger binaryAuctions = new AtomicInteger();
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    void start() throws IOException {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String path = request.getPath();
+                if (path.startsWith("/mj/auction/")) {
+                    Endpoint endpoint = endpoints.get(path.substring("/mj/auction/".length()).split("\\?")[0]);
+                    return endpoint != null ? endpoint.dispatch(request) : new MockResponse().setResponseCode(404);
+                }
+                if (path.startsWith("/mj/auction")) {
+                    int auction = auctions.incrementAndGet();
+                    return answer(request, fill ? auctionResponse(String.valueOf(auction)) : "{\"status\":\"no_bid\"}")
+                            .setBodyDelay(auctionDelayMillis, TimeUnit.MILLISECONDS);
+                }
+                if (path.startsWith("/image")) {
+                    images.incrementAndGet();
+                    return png();
+                }
+                if (path.startsWith("/pixel")) {
+                    pixels.incrementAndGet();
+                    return png();
+                }
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+        server.start();
+    }
+
+    void shutdown() throws IOException {
+        server.shutdown();
+    }
+
+    String getAuctionUrl() {
+        return server.url("/mj/auction").toString() + "?invType=app&";
+    }
+
+    /** The named endpoint, created on first use */
+    Endpoint endpoint(String name) {
+        Endpoint endpoint = endpoints.get(name);
+        if (endpoint == null) {
+            endpoint = new Endpoint(name);
+            endpoints.put(name, endpoint);
+        }
+        return endpoint;
+    }
+
+    void setAuctionDelayMillis(long auctionDelayMillis) {
+        this.auctionDelayMillis = auctionDelayMillis;
+    }
+
+    void setFill(boolean fill) {
+        this.fill = fill;
+    }
+
+    /** Whether auctions asking for the binary codec get it, otherwise every answer is JSON */
+    void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+
+    int getBinaryAuctionCount() {
+        return binaryAuctions.get();
+    }
+
+    int getAuctionCount() {
+        return auctions.get();
+    }
+
+    int getImageCount() {
+        return images.get();
+    }
+
+    int getPixelCount() {
+        return pixels.get();
+    }
+
+    String auctionResponse(String auction) {
+        return "{\"advertiser_name\":\"Stub Brand " + auction + "\","
+                + "\"clickthrough_url\":\"" + server.url("/landing/" + auction) + "\","
+                + "\"image_url\":\"" + server.url("/image/" + auction + ".png") + "\","
+                + "\"caption\":\"Stub caption for auction " + auction + ", long enough to wrap on a phone.\","
+                + "\"heading\":\"Stub heading " + auction + "\","
+                + "\"impression_pixels\":[\"" + server.url("/pixel/imp?a=" + auction) + "\"],"
+                + "\"clickthrough_pixels\":[\"" + server.url("/pixel/click?a=" + auction) + "\"]}";
+    }
+
+    // the JSON answer, re-encoded when the auction offered the binary codec
+    private MockResponse answer(RecordedRequest request, String json) {
+        String accept = request.getHeader("Accept");
+        if (!binary || accept == null || !accept.contains(BinaryAuctionResponseCodec.CONTENT_TYPE)) {
+            return new MockResponse()
+                    .setHeader("Content-Type", JsonAuctionResponseCodec.CONTENT_TYPE)
+                    .setBody(json);
+        }
+        try {
+            AuctionAnswer answer = AuctionResponseCodecs.JSON.decode(json.getBytes("UTF-8"), "UTF-8");
+            binaryAuctions.incrementAndGet();
+            return new MockResponse()
+                    .setHeader("Content-Type", BinaryAuctionResponseCodec.CONTENT_TYPE)
+                    .setBody(new Buffer().write(AuctionResponseCodecs.BINARY.encode(answer)));
+        } catch (IOException e) {
+            return new MockResponse().setResponseCode(500);
+        }
+    }
+
+    private static MockResponse png() {
+        return new MockResponse()
+                .setHeader("Content-Type", "image/png")
+                .setBody(new Buffer().write(PNG));
+    }
+}